@@ -1,10 +1,11 @@
 package com.android.messagebusexample
 
 import com.android.messagebusexample.lib.Subscribe
+import com.android.messagebusexample.lib.Subscriber
 import com.android.messagebusexample.lib.To
 import org.slf4j.LoggerFactory
 
-@Subscribe
+@Subscriber
 class ActionCapture {
 
     private val LOGGER = LoggerFactory.getLogger(ActionCapture::class.java)
@@ -12,6 +12,7 @@ import java.util.concurrent.Executors
 
 class MainActivity : AppCompatActivity() {
     lateinit var messageBus: MessageBus
+    private val actionCapture = ActionCapture()
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
@@ -21,16 +22,21 @@ class MainActivity : AppCompatActivity() {
         messageBus = MessageBus(Executors.newSingleThreadExecutor {
             Thread(it, "messagebus-async")
         })
+        messageBus.sticky(Messages.Destinations.SYSTEM_SHUT_DOWN)
+        messageBus.addSubscriberIndex(MessageBusIndex())
     }
 
     override fun onStart() {
         super.onStart()
         messageBus.registerListener(Messages.Destinations.SYSTEM_SHUT_DOWN, main)
+        messageBus.register(actionCapture)
+        messageBus.validateSubscriptions()
     }
 
     override fun onStop() {
         super.onStop()
         messageBus.unregisterListener(Messages.Destinations.SYSTEM_SHUT_DOWN, main)
+        messageBus.unregister(actionCapture)
     }
 
     @Throws(MessageBusException::class)
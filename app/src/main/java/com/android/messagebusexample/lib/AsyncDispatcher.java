@@ -0,0 +1,32 @@
+package com.android.messagebusexample.lib;
+
+import java.util.List;
+
+/**
+ * Engine behind {@link MessageBus#sendMessageAsync(Message, Sender)}, see {@link AsyncDispatchers} for the built-in
+ * ones. A dispatcher is started by the bus it is passed to and can't be shared between buses.
+ */
+public interface AsyncDispatcher {
+    void start(Delivery delivery);
+
+    /**
+     * Queues the message to be handed to the {@link Delivery} on a dispatcher thread.
+     */
+    void dispatch(Message message, Sender sender);
+
+    /**
+     * Queues the messages to be handed to the {@link Delivery} together.
+     */
+    void dispatchAll(List<Message> messages, Sender sender);
+
+    /**
+     * Stops accepting messages, the ones already queued are still delivered.
+     */
+    void shutdown();
+
+    interface Delivery {
+        void deliver(Message message, Sender sender);
+
+        void deliverAll(List<Message> messages, Sender sender);
+    }
+}
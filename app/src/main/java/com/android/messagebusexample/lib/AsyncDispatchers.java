@@ -0,0 +1,173 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class AsyncDispatchers {
+    private AsyncDispatchers() {
+    }
+
+    /**
+     * Submits a task per message to the executor, the executor is not shut down with the dispatcher.
+     */
+    public static AsyncDispatcher executor(final Executor executor) {
+        Assert.notNull(executor, "executor parameter can't be null.");
+
+        return new AsyncDispatcher() {
+            private Delivery delivery;
+
+            @Override
+            public void start(Delivery delivery) {
+                Assert.state(this.delivery == null, "Dispatcher is already started.");
+                this.delivery = delivery;
+            }
+
+            @Override
+            public void dispatch(final Message message, final Sender sender) {
+                executor.execute(() -> delivery.deliver(message, sender));
+            }
+
+            @Override
+            public void dispatchAll(final List<Message> messages, final Sender sender) {
+                executor.execute(() -> delivery.deliverAll(messages, sender));
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+    }
+
+    /**
+     * Preallocated ring buffer drained in batches by daemon consumer threads, nothing is allocated per message.
+     * Producers wait according to the wait strategy when the buffer is full. Messages are delivered in order
+     * with a single consumer, several consumers may deliver them out of order. A listener sending async into a full
+     * buffer delivers the message itself rather than waiting on its own consumer.
+     *
+     * @param bufferSize power of 2
+     */
+    public static AsyncDispatcher ringBuffer(int bufferSize, int consumerCount, WaitStrategy waitStrategy) {
+        return ringBuffer(bufferSize, consumerCount, waitStrategy, daemonThreadFactory("messagebus-ring-"));
+    }
+
+    public static AsyncDispatcher ringBuffer(int bufferSize, int consumerCount, WaitStrategy waitStrategy,
+                                             ThreadFactory threadFactory) {
+        return new RingBufferDispatcher(bufferSize, consumerCount, waitStrategy, threadFactory);
+    }
+
+    /**
+     * Destinations hashed onto lanes served by a daemon thread each, messages of a destination are delivered in the
+     * order they were sent while different destinations are delivered in parallel. The destinations of a lane take
+     * turns of at most {@code quantum} messages, so a busy destination can't hold back the others.
+     */
+    public static AsyncDispatcher striped(int laneCount) {
+        return striped(laneCount, 16, daemonThreadFactory("messagebus-lane-"));
+    }
+
+    public static AsyncDispatcher striped(int laneCount, int quantum, ThreadFactory threadFactory) {
+        return new StripedDispatcher(laneCount, quantum, threadFactory);
+    }
+
+    /**
+     * Queue per {@link Priority} drained by daemon worker threads, higher priority messages are delivered first, see
+     * {@link Message#setPriority(Priority)}. {@link Priority#HIGHER} messages always go first, a message of the other
+     * priorities overtakes the messages of the priority above once it waited 100 milliseconds longer, so lower
+     * priorities aren't starved.
+     */
+    public static AsyncDispatcher prioritized(int workerCount) {
+        return prioritized(workerCount, 100L, TimeUnit.MILLISECONDS, daemonThreadFactory("messagebus-priority-"));
+    }
+
+    public static AsyncDispatcher prioritized(int workerCount, long aging, TimeUnit unit, ThreadFactory threadFactory) {
+        Assert.notNull(unit, "unit parameter can't be null.");
+
+        return new PriorityDispatcher(workerCount, unit.toNanos(aging), threadFactory);
+    }
+
+    /**
+     * Queue holding at most {@code capacity} messages or batches, drained by daemon worker threads. See
+     * {@link BoundedDispatcher} for the queue depth and drop counts per destination.
+     *
+     * @param overflowPolicy any but {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}, which needs a timeout
+     */
+    public static BoundedDispatcher bounded(int capacity, int workerCount, OverflowPolicy overflowPolicy) {
+        Assert.isTrue(overflowPolicy != OverflowPolicy.BLOCK_WITH_TIMEOUT, "BLOCK_WITH_TIMEOUT policy needs a timeout.");
+
+        return new BoundedDispatcher(capacity, workerCount, overflowPolicy, 0L, daemonThreadFactory("messagebus-bounded-"));
+    }
+
+    /**
+     * @param timeout how long a sender waits for room with {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}
+     */
+    public static BoundedDispatcher bounded(int capacity, int workerCount, OverflowPolicy overflowPolicy,
+                                            long timeout, TimeUnit unit, ThreadFactory threadFactory) {
+        Assert.notNull(unit, "unit parameter can't be null.");
+
+        return new BoundedDispatcher(capacity, workerCount, overflowPolicy, unit.toNanos(timeout), threadFactory);
+    }
+
+    /**
+     * Runs every delivery as its own task for listeners doing blocking work, on a virtual thread where the runtime
+     * has them and otherwise on a cached pool of daemon threads. At most {@code maxConcurrencyPerDestination}
+     * deliveries of a destination run at a time, the others wait without holding a thread.
+     */
+    public static AsyncDispatcher blocking(int maxConcurrencyPerDestination) {
+        return new BlockingDispatcher(maxConcurrencyPerDestination, null);
+    }
+
+    /**
+     * @param fallbackExecutor used where the runtime has no virtual threads, e.g. on Android
+     */
+    public static AsyncDispatcher blocking(int maxConcurrencyPerDestination, Executor fallbackExecutor) {
+        Assert.notNull(fallbackExecutor, "fallbackExecutor parameter can't be null.");
+
+        return new BlockingDispatcher(maxConcurrencyPerDestination, fallbackExecutor);
+    }
+
+    /**
+     * Journals every message in the directory before handing it to the delegate, the messages which weren't delivered
+     * are replayed by {@link JournalDispatcher#replay()} when a dispatcher is started on the directory again, see
+     * {@link FsyncPolicy}. Uses segments of 16 MB forced to storage every 100 milliseconds.
+     */
+    public static JournalDispatcher durable(File directory, AsyncDispatcher delegate) {
+        return durable(directory, delegate, 16 * 1024 * 1024, FsyncPolicy.INTERVAL, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param delegate      dispatcher delivering the journaled messages, it shouldn't drop messages as only delivered
+     *                      messages are removed from the journal
+     * @param segmentSize   size of the journal files in bytes, a message has to fit into one
+     * @param flushInterval time between forces with {@link FsyncPolicy#INTERVAL}
+     */
+    public static JournalDispatcher durable(File directory, AsyncDispatcher delegate, int segmentSize,
+                                          FsyncPolicy fsyncPolicy, long flushInterval, TimeUnit unit) {
+        return durable(directory, delegate, segmentSize, fsyncPolicy, flushInterval, unit, MessageCodec.create());
+    }
+
+    /**
+     * @param codec codec of the journaled messages, its dictionary has to stay compatible between runs
+     */
+    public static JournalDispatcher durable(File directory, AsyncDispatcher delegate, int segmentSize,
+                                          FsyncPolicy fsyncPolicy, long flushInterval, TimeUnit unit,
+                                          MessageCodec codec) {
+        Assert.notNull(unit, "unit parameter can't be null.");
+
+        return new JournalDispatcher(directory, delegate, segmentSize, fsyncPolicy, unit.toNanos(flushInterval),
+                codec, daemonThreadFactory("messagebus-journal-"));
+    }
+
+    static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
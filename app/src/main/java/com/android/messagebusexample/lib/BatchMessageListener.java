@@ -0,0 +1,15 @@
+package com.android.messagebusexample.lib;
+
+import java.util.List;
+
+/**
+ * Listener which receives the messages of a batch sent by {@link MessageBus#sendMessages(java.util.Collection)}
+ * for its destination and action in a single call. Messages sent one by one still arrive through
+ * {@link #receive(Message)}.
+ */
+public interface BatchMessageListener extends MessageListener {
+    /**
+     * @param messages read-only messages of the batch in the order they were sent
+     */
+    void receiveAll(List<Message> messages) throws MessageListenerException;
+}
@@ -0,0 +1,212 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatcher for listeners doing blocking work, every delivery runs as its own task. On runtimes with virtual
+ * threads the tasks run on a virtual thread each, so blocked deliveries don't hold OS threads, otherwise on the
+ * fallback executor.
+ * <p>
+ * At most {@code maxConcurrencyPerDestination} deliveries of a destination run at a time, further messages wait in
+ * a queue of the destination without holding a thread and are started in the order they were sent.
+ */
+final class BlockingDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockingDispatcher.class);
+
+    private final Executor executor;
+    private final int maxConcurrencyPerDestination;
+    private final ConcurrentHashMap<String, Gate> gates = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Delivery delivery;
+
+    /**
+     * @param fallbackExecutor null to create a cached pool of daemon threads if the runtime has no virtual threads
+     */
+    BlockingDispatcher(int maxConcurrencyPerDestination, @Nullable Executor fallbackExecutor) {
+        Assert.isTrue(maxConcurrencyPerDestination > 0, "maxConcurrencyPerDestination parameter must be positive.");
+
+        Executor virtualThreadExecutor = newVirtualThreadExecutor();
+        LOGGER.debug("Delivering on {}", virtualThreadExecutor != null ? "virtual threads" : "the fallback executor");
+        if (virtualThreadExecutor != null) {
+            this.executor = virtualThreadExecutor;
+        } else if (fallbackExecutor != null) {
+            this.executor = fallbackExecutor;
+        } else {
+            this.executor = Executors.newCachedThreadPool(AsyncDispatchers.daemonThreadFactory("messagebus-blocking-"));
+        }
+        this.maxConcurrencyPerDestination = maxConcurrencyPerDestination;
+    }
+
+    /**
+     * @return executor starting a virtual thread per task or null if the runtime has no virtual threads
+     */
+    @Nullable
+    static Executor newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void start(Delivery delivery) {
+        Assert.state(this.delivery == null, "Dispatcher is already started.");
+
+        this.delivery = delivery;
+        this.running = true;
+    }
+
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        enter(message.getDestination(), new Task(message, null, sender));
+    }
+
+    /**
+     * The batch counts against the concurrency cap of the destination of its first message.
+     */
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        enter(messages.get(0).getDestination(), new Task(null, messages, sender));
+    }
+
+    /**
+     * Stops accepting messages. The executor isn't shut down, virtual threads end with their task and the threads
+     * of the fallback executor are up to its configuration.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+    }
+
+    private void enter(String destination, Task task) {
+        if (!running) {
+            throw new RejectedExecutionException("Dispatcher is not running");
+        }
+
+        while (true) {
+            Gate gate = gates.get(destination);
+            if (gate == null) {
+                gate = new Gate(destination);
+                Gate existing = gates.putIfAbsent(destination, gate);
+                if (existing != null) {
+                    gate = existing;
+                }
+            }
+            if (gate.enter(task)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Concurrency cap of a destination. Removed once nothing of the destination runs or waits, senders which still
+     * found the removed gate retry with a new one, so there is a single gate in use per destination.
+     */
+    private final class Gate {
+        private final String destination;
+        private final ArrayDeque<Task> waiting = new ArrayDeque<>();
+        private int runningCount;
+        private boolean removed;
+
+        private Gate(String destination) {
+            this.destination = destination;
+        }
+
+        /**
+         * @return false if the gate was removed
+         */
+        private boolean enter(Task task) {
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                if (runningCount >= maxConcurrencyPerDestination) {
+                    waiting.addLast(task);
+                    return true;
+                }
+                runningCount++;
+            }
+            start(task);
+            return true;
+        }
+
+        private void leave() {
+            Task next;
+            synchronized (this) {
+                next = waiting.pollFirst();
+                if (next == null) {
+                    if (--runningCount == 0) {
+                        removed = true;
+                        gates.remove(destination, this);
+                    }
+                    return;
+                }
+            }
+            start(next);
+        }
+
+        private void start(Task task) {
+            task.gate = this;
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOGGER.error("Executor rejected delivery of message: {}", task.message != null ? task.message : task.batch, e);
+                task.release();
+                leave();
+            }
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final Message message;
+        private final List<Message> batch;
+        private final Sender sender;
+        private Gate gate;
+
+        private Task(Message message, List<Message> batch, Sender sender) {
+            this.message = message;
+            this.batch = batch;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (batch != null) {
+                    delivery.deliverAll(batch, sender);
+                } else {
+                    delivery.deliver(message, sender);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to deliver message: {}", message != null ? message : batch, e);
+            } finally {
+                gate.leave();
+            }
+        }
+
+        private void release() {
+            if (batch != null) {
+                for (Message batchMessage : batch) {
+                    batchMessage.release();
+                }
+            } else {
+                message.release();
+            }
+        }
+    }
+}
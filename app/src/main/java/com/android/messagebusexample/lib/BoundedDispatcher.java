@@ -0,0 +1,400 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatcher with a queue of fixed capacity drained by worker threads, a full queue is handled according to the
+ * {@link OverflowPolicy}. A batch takes a single place in the queue. Dropped messages are released.
+ * <p>
+ * A listener sending from a worker thread into the full queue of a blocking policy can't wait for room, as only the
+ * workers make room. Its message is delivered right away on the worker thread instead, ahead of the queued ones.
+ * <p>
+ * The queue depth and the number of dropped messages are tracked per destination, see {@link #getQueueDepth(String)}
+ * and {@link #getDroppedCount(String)}. Destinations are only tracked while they have queued messages or once they
+ * dropped one.
+ */
+public final class BoundedDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedDispatcher.class);
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final Map<String, DestinationCounts> destinationCounts = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final int capacity;
+    private final int workerCount;
+    private final OverflowPolicy overflowPolicy;
+    private final long timeoutNanos;
+    private final ThreadFactory threadFactory;
+    // guarded by lock
+    private final Thread[] workerThreads;
+
+    private boolean running;
+    private Delivery delivery;
+
+    BoundedDispatcher(int capacity, int workerCount, OverflowPolicy overflowPolicy, long timeoutNanos,
+                      ThreadFactory threadFactory) {
+        Assert.isTrue(capacity > 0, "capacity parameter must be positive.");
+        Assert.isTrue(workerCount > 0, "workerCount parameter must be positive.");
+        Assert.notNull(overflowPolicy, "overflowPolicy parameter can't be null.");
+        Assert.isTrue(timeoutNanos >= 0, "timeout parameter can't be negative.");
+        Assert.notNull(threadFactory, "threadFactory parameter can't be null.");
+
+        this.capacity = capacity;
+        this.workerCount = workerCount;
+        this.overflowPolicy = overflowPolicy;
+        this.timeoutNanos = timeoutNanos;
+        this.threadFactory = threadFactory;
+        this.workerThreads = new Thread[workerCount];
+    }
+
+    @Override
+    public void start(Delivery delivery) {
+        lock.lock();
+        try {
+            Assert.state(this.delivery == null, "Dispatcher is already started.");
+
+            this.delivery = delivery;
+            this.running = true;
+            for (int i = 0; i < workerCount; i++) {
+                workerThreads[i] = threadFactory.newThread(new Worker());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Thread workerThread : workerThreads) {
+            workerThread.start();
+        }
+    }
+
+    /**
+     * Like {@link #offer(Message, Sender)}, a message which isn't accepted is dropped silently.
+     */
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        offer(message, sender);
+    }
+
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        offerAll(messages, sender);
+    }
+
+    @NotNull
+    public DispatchResult offer(Message message, Sender sender) {
+        return enqueue(new Entry(message, null, sender));
+    }
+
+    @NotNull
+    public DispatchResult offerAll(List<Message> messages, Sender sender) {
+        return enqueue(new Entry(null, messages, sender));
+    }
+
+    private DispatchResult enqueue(Entry entry) {
+        DispatchResult result;
+        Entry dropped = null;
+        boolean inline;
+        lock.lock();
+        try {
+            // a worker waiting for room would wait for itself
+            inline = running && queue.size() >= capacity && isBlocking() && isWorkerThread(Thread.currentThread());
+            result = inline ? DispatchResult.ACCEPTED : awaitRoom(entry);
+            if (result == DispatchResult.ACCEPTED && !inline) {
+                if (queue.size() >= capacity) {
+                    dropped = queue.pollFirst();
+                    countQueued(dropped, -1);
+                    countDropped(dropped);
+                }
+                queue.addLast(entry);
+                countQueued(entry, 1);
+                notEmpty.signal();
+            } else if (result != DispatchResult.ACCEPTED) {
+                countDropped(entry);
+                dropped = entry;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (dropped != null) {
+            LOGGER.debug("Dropped message due to a full queue: {}", dropped.message != null ? dropped.message : dropped.batch);
+            dropped.release();
+        }
+        if (inline) {
+            deliver(entry);
+        }
+        return result;
+    }
+
+    private boolean isBlocking() {
+        return overflowPolicy == OverflowPolicy.BLOCK || overflowPolicy == OverflowPolicy.BLOCK_WITH_TIMEOUT;
+    }
+
+    // guarded by lock
+    private boolean isWorkerThread(Thread thread) {
+        for (Thread workerThread : workerThreads) {
+            if (workerThread == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deliver(Entry entry) {
+        try {
+            if (entry.batch != null) {
+                delivery.deliverAll(entry.batch, entry.sender);
+            } else {
+                delivery.deliver(entry.message, entry.sender);
+            }
+        } catch (Throwable e) {
+            // an Error would otherwise end the worker and stall the queue
+            LOGGER.error("Failed to deliver message: {}", entry.message != null ? entry.message : entry.batch, e);
+        }
+    }
+
+    /**
+     * @return {@link DispatchResult#ACCEPTED} if the entry may be queued, possibly after dropping the oldest one
+     */
+    private DispatchResult awaitRoom(Entry entry) {
+        if (!running) {
+            return DispatchResult.REJECTED;
+        }
+        if (queue.size() < capacity) {
+            return DispatchResult.ACCEPTED;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                return DispatchResult.ACCEPTED;
+            case DROP_NEWEST:
+                return DispatchResult.DROPPED;
+            case REJECT:
+                return DispatchResult.REJECTED;
+            default:
+                break;
+        }
+
+        long remainingNanos = timeoutNanos;
+        boolean timed = overflowPolicy == OverflowPolicy.BLOCK_WITH_TIMEOUT;
+        try {
+            while (queue.size() >= capacity) {
+                if (timed && remainingNanos <= 0L) {
+                    return DispatchResult.TIMED_OUT;
+                }
+                if (timed) {
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                } else {
+                    notFull.await();
+                }
+                if (!running) {
+                    return DispatchResult.REJECTED;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return DispatchResult.REJECTED;
+        }
+        return DispatchResult.ACCEPTED;
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of queued messages
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            int depth = 0;
+            for (DestinationCounts counts : destinationCounts.values()) {
+                depth += counts.queued;
+            }
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of queued messages for the destination
+     */
+    public int getQueueDepth(String destination) {
+        lock.lock();
+        try {
+            DestinationCounts counts = destinationCounts.get(destination);
+            return counts == null ? 0 : counts.queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of messages for the destination dropped since the dispatcher was created
+     */
+    public long getDroppedCount(String destination) {
+        lock.lock();
+        try {
+            DestinationCounts counts = destinationCounts.get(destination);
+            return counts == null ? 0L : counts.dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return snapshot of the dropped message counts by destination
+     */
+    @NotNull
+    public Map<String, Long> getDroppedCounts() {
+        lock.lock();
+        try {
+            Map<String, Long> droppedCounts = new HashMap<>();
+            for (Map.Entry<String, DestinationCounts> entry : destinationCounts.entrySet()) {
+                if (entry.getValue().dropped > 0L) {
+                    droppedCounts.put(entry.getKey(), entry.getValue().dropped);
+                }
+            }
+            return droppedCounts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countQueued(Entry entry, int delta) {
+        if (entry.batch != null) {
+            for (Message message : entry.batch) {
+                countQueued(message.getDestination(), delta);
+            }
+        } else {
+            countQueued(entry.message.getDestination(), delta);
+        }
+    }
+
+    /**
+     * Counts of destinations without queued or dropped messages are removed, so destinations generated per entity
+     * don't pile up.
+     */
+    private void countQueued(String destination, int delta) {
+        DestinationCounts counts = countsOf(destination);
+        counts.queued += delta;
+        if (counts.queued == 0 && counts.dropped == 0L) {
+            destinationCounts.remove(destination);
+        }
+    }
+
+    private void countDropped(Entry entry) {
+        if (entry.batch != null) {
+            for (Message message : entry.batch) {
+                countsOf(message.getDestination()).dropped++;
+            }
+        } else {
+            countsOf(entry.message.getDestination()).dropped++;
+        }
+    }
+
+    private DestinationCounts countsOf(String destination) {
+        DestinationCounts counts = destinationCounts.get(destination);
+        if (counts == null) {
+            counts = new DestinationCounts();
+            destinationCounts.put(destination, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return next entry or null once the dispatcher is shut down and drained
+     */
+    private Entry take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+
+            Entry entry = queue.pollFirst();
+            countQueued(entry, -1);
+            notFull.signal();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (entry == null) {
+                    return;
+                }
+                deliver(entry);
+            }
+        }
+    }
+
+    private static final class DestinationCounts {
+        private int queued;
+        private long dropped;
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final List<Message> batch;
+        private final Sender sender;
+
+        private Entry(Message message, List<Message> batch, Sender sender) {
+            this.message = message;
+            this.batch = batch;
+            this.sender = sender;
+        }
+
+        private void release() {
+            if (batch != null) {
+                for (Message message : batch) {
+                    message.release();
+                }
+            } else {
+                message.release();
+            }
+        }
+    }
+}
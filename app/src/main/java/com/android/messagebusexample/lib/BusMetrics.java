@@ -0,0 +1,171 @@
+package com.android.messagebusexample.lib;
+
+import com.google.common.collect.MapMaker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics recorded by a bus while they are enabled. Counters are striped per destination, so sends from several
+ * threads don't contend on them, listener execution times are recorded by wrapping the listeners of the snapshots
+ * being delivered to, see {@link MessageListeners#timed(BusMetrics)}. Listener times are held weakly by listener
+ * identity, so unregistered listeners aren't kept reachable and drop out of the snapshots once collected.
+ */
+final class BusMetrics {
+    static final int MESSAGES = 0;
+    static final int DELIVERIES = 1;
+    static final int FAILURES = 2;
+    static final int UNROUTED = 3;
+    static final int QUEUED = 4;
+    static final int DEQUEUED = 5;
+    private static final int COUNTER_COUNT = 6;
+
+    private final ConcurrentHashMap<String, DestinationMetrics> destinations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MessageListener, LatencyHistogram> listenerTimes = new MapMaker().weakKeys().makeMap();
+
+    @NotNull
+    DestinationMetrics destination(@NotNull String destination) {
+        DestinationMetrics metrics = destinations.get(destination);
+        if (metrics == null) {
+            metrics = new DestinationMetrics();
+            DestinationMetrics existing = destinations.putIfAbsent(destination, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Counts an async message as queued.
+     */
+    void queued(@NotNull Message message) {
+        destination(message.getDestination()).counters.increment(QUEUED);
+    }
+
+    /**
+     * Counts an async message as taken from the queue and records its lag.
+     *
+     * @param queuedAtNanos {@link System#nanoTime()} of the async send
+     */
+    void dequeued(@NotNull Message message, long queuedAtNanos) {
+        DestinationMetrics metrics = destination(message.getDestination());
+        metrics.counters.increment(DEQUEUED);
+        metrics.lag.record(System.nanoTime() - queuedAtNanos);
+    }
+
+    /**
+     * Counts the messages handed to the listeners of a destination.
+     */
+    void delivered(@NotNull String destination, int messageCount, @NotNull MessageListeners listeners) {
+        StripedCounters counters = destination(destination).counters;
+        counters.add(MESSAGES, messageCount);
+        if (listeners.isEmpty()) {
+            counters.add(UNROUTED, messageCount);
+        } else {
+            counters.add(DELIVERIES, (long) messageCount * listeners.size());
+        }
+    }
+
+    @NotNull
+    MessageListener timed(@NotNull MessageListener listener) {
+        LatencyHistogram histogram = listenerTimes.get(listener);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = listenerTimes.putIfAbsent(listener, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+
+        if (listener instanceof BatchMessageListener) {
+            return new TimedBatchListener((BatchMessageListener) listener, histogram);
+        }
+        return new TimedListener(listener, histogram);
+    }
+
+    /**
+     * @param boundedDispatcher dispatcher of the bus if it counts its queued messages itself, the queue depths are
+     *                          taken from it then
+     */
+    @NotNull
+    MetricsSnapshot snapshot(@Nullable BoundedDispatcher boundedDispatcher) {
+        Map<String, MetricsSnapshot.Destination> destinationSnapshots = new HashMap<>();
+        for (Map.Entry<String, DestinationMetrics> entry : destinations.entrySet()) {
+            String name = entry.getKey();
+            StripedCounters counters = entry.getValue().counters;
+            long queueDepth = boundedDispatcher != null ? boundedDispatcher.getQueueDepth(name)
+                    : counters.sum(QUEUED) - counters.sum(DEQUEUED);
+            destinationSnapshots.put(name, new MetricsSnapshot.Destination(name, counters.sum(MESSAGES),
+                    counters.sum(DELIVERIES), counters.sum(FAILURES), counters.sum(UNROUTED), Math.max(queueDepth, 0L),
+                    entry.getValue().lag.snapshot()));
+        }
+
+        Map<MessageListener, MetricsSnapshot.Histogram> listenerSnapshots = new HashMap<>();
+        for (Map.Entry<MessageListener, LatencyHistogram> entry : listenerTimes.entrySet()) {
+            listenerSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), destinationSnapshots, listenerSnapshots);
+    }
+
+    static final class DestinationMetrics {
+        final StripedCounters counters = new StripedCounters(COUNTER_COUNT);
+        final LatencyHistogram lag = new LatencyHistogram();
+    }
+
+    private class TimedListener implements MessageListener {
+        final LatencyHistogram histogram;
+        private final MessageListener listener;
+
+        TimedListener(MessageListener listener, LatencyHistogram histogram) {
+            this.listener = listener;
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void receive(Message message) throws MessageListenerException {
+            long start = System.nanoTime();
+            try {
+                listener.receive(message);
+            } catch (MessageListenerException | RuntimeException e) {
+                destination(message.getDestination()).counters.increment(FAILURES);
+                throw e;
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return listener.toString();
+        }
+    }
+
+    private final class TimedBatchListener extends TimedListener implements BatchMessageListener {
+        private final BatchMessageListener listener;
+
+        TimedBatchListener(BatchMessageListener listener, LatencyHistogram histogram) {
+            super(listener, histogram);
+            this.listener = listener;
+        }
+
+        @Override
+        public void receiveAll(List<Message> messages) throws MessageListenerException {
+            long start = System.nanoTime();
+            try {
+                listener.receiveAll(messages);
+            } catch (MessageListenerException | RuntimeException e) {
+                destination(messages.get(0).getDestination()).counters.increment(FAILURES);
+                throw e;
+            } finally {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
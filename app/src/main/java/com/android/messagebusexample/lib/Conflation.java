@@ -0,0 +1,123 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pending async messages of a conflating destination, at most one per key. The first message sent for a key is
+ * dispatched, later ones only replace the pending message until the dispatched one is delivered, then the latest
+ * message is delivered in its place. Replaced messages are released.
+ */
+final class Conflation {
+    private static final Object NO_KEY = new Object();
+
+    @Nullable
+    private final String keyField;
+    private final Map<Object, Pending> pendingByKey = new HashMap<>();
+    private boolean drained;
+
+    Conflation(@Nullable String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * @return true if the message has to be dispatched, false if it replaced a pending message
+     */
+    synchronized boolean offer(@NotNull Message message, @NotNull Sender sender) {
+        if (drained) {
+            return true;
+        }
+
+        Object key = keyOf(message);
+        Pending pending = pendingByKey.get(key);
+        if (pending == null) {
+            pendingByKey.put(key, new Pending(message, sender));
+            return true;
+        }
+
+        if (pending.latest != pending.dispatched) {
+            pending.latest.release();
+        }
+        pending.latest = message;
+        pending.latestSender = sender;
+        return false;
+    }
+
+    /**
+     * Forgets the message if its dispatch failed, so the next message of its key is dispatched again.
+     */
+    synchronized void cancel(@NotNull Message dispatched) {
+        Object key = keyOf(dispatched);
+        Pending pending = pendingByKey.get(key);
+        if (pending != null && pending.dispatched == dispatched) {
+            pendingByKey.remove(key);
+            if (pending.latest != dispatched) {
+                pending.latest.release();
+            }
+        }
+    }
+
+    /**
+     * Called when a dispatched message is about to be delivered.
+     *
+     * @return the latest message of its key or null if the message wasn't dispatched through this conflation
+     */
+    @Nullable
+    synchronized Pending take(@NotNull Message dispatched) {
+        Object key = keyOf(dispatched);
+        Pending pending = pendingByKey.get(key);
+        if (pending == null || pending.dispatched != dispatched) {
+            return null;
+        }
+
+        pendingByKey.remove(key);
+        if (pending.latest != dispatched) {
+            dispatched.release();
+        }
+        return pending;
+    }
+
+    /**
+     * Clears the pending messages, afterwards every offered message is dispatched.
+     *
+     * @return the latest messages which replaced a dispatched one and still have to be dispatched
+     */
+    @NotNull
+    synchronized List<Pending> drain() {
+        List<Pending> replaced = new ArrayList<>();
+        for (Pending pending : pendingByKey.values()) {
+            if (pending.latest != pending.dispatched) {
+                replaced.add(pending);
+            }
+        }
+        pendingByKey.clear();
+        drained = true;
+        return replaced;
+    }
+
+    private Object keyOf(Message message) {
+        if (keyField == null) {
+            return NO_KEY;
+        }
+
+        Object key = message.getExtraData().get(keyField);
+        return key != null ? key : NO_KEY;
+    }
+
+    static final class Pending {
+        private final Message dispatched;
+        Message latest;
+        Sender latestSender;
+
+        private Pending(Message dispatched, Sender sender) {
+            this.dispatched = dispatched;
+            this.latest = dispatched;
+            this.latestSender = sender;
+        }
+    }
+}
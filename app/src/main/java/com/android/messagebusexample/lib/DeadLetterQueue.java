@@ -0,0 +1,317 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retries deliveries which failed with {@link Senders#deadLettering(DeadLetterQueue)} and keeps the ones which failed
+ * for good. A failed delivery is retried for its listener only, with exponentially growing delays kept on the timing
+ * wheel of the bus, the retries run on the retry executor so a slow listener doesn't hold back the others. After the
+ * last retry it is stored as a {@link DeadLetter} for inspection and replay, the oldest dead letters are dropped
+ * beyond the capacity. Retries pending when the bus shuts down are stored right away.
+ * <p>
+ * Pooled messages are retained while they wait for a retry or are stored.
+ */
+public final class DeadLetterQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterQueue.class);
+
+    private final TimingWheel timingWheel;
+    private final int maxRetries;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int capacity;
+    private final ArrayDeque<DeadLetter> deadLetters = new ArrayDeque<>();
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+    // guarded by this, created with the first retry if none was given
+    private Executor retryExecutor;
+
+    private DeadLetterQueue(TimingWheel timingWheel, int maxRetries, long initialBackoffNanos, long maxBackoffNanos,
+                            int capacity, Executor retryExecutor) {
+        Assert.isTrue(maxRetries >= 0, "maxRetries parameter can't be negative.");
+        Assert.isTrue(initialBackoffNanos > 0, "initialBackoff parameter must be positive.");
+        Assert.isTrue(maxBackoffNanos >= initialBackoffNanos, "maxBackoff parameter can't be less than initialBackoff.");
+        Assert.isTrue(capacity > 0, "capacity parameter must be positive.");
+
+        this.timingWheel = timingWheel;
+        this.maxRetries = maxRetries;
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maxBackoffNanos = maxBackoffNanos;
+        this.capacity = capacity;
+        this.retryExecutor = retryExecutor;
+    }
+
+    /**
+     * 3 retries after 100 milliseconds, doubling up to 10 seconds, keeping up to 1000 dead letters. Retries run on
+     * a cached pool of daemon threads, created with the first retry.
+     */
+    public static DeadLetterQueue create(MessageBus bus) {
+        Assert.notNull(bus, "bus parameter can't be null.");
+
+        return new DeadLetterQueue(bus.getTimingWheel(), 3, TimeUnit.MILLISECONDS.toNanos(100L),
+                TimeUnit.SECONDS.toNanos(10L), 1000, null);
+    }
+
+    /**
+     * @param bus           bus whose timing wheel keeps the retries, the queue is meant for senders of this bus
+     * @param retryExecutor runs the retries, the calling thread of {@link #replay(DeadLetter)} aside
+     */
+    public static DeadLetterQueue create(MessageBus bus, int maxRetries, long initialBackoff, long maxBackoff,
+                                         TimeUnit unit, int capacity, Executor retryExecutor) {
+        Assert.notNull(bus, "bus parameter can't be null.");
+        Assert.notNull(unit, "unit parameter can't be null.");
+        Assert.notNull(retryExecutor, "retryExecutor parameter can't be null.");
+
+        return new DeadLetterQueue(bus.getTimingWheel(), maxRetries, unit.toNanos(initialBackoff),
+                unit.toNanos(maxBackoff), capacity, retryExecutor);
+    }
+
+    /**
+     * Delivers the message to the listener, a failure is scheduled for a retry instead of being thrown.
+     */
+    void deliver(@NotNull MessageListener listener, @NotNull Message message) {
+        try {
+            listener.receive(message);
+        } catch (MessageListenerException | RuntimeException e) {
+            message.retain();
+            failed(new DeadLetter(message, listener, e, 1));
+        }
+    }
+
+    /**
+     * @return snapshot of the stored dead letters, the oldest first
+     */
+    @NotNull
+    public synchronized List<DeadLetter> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    public synchronized int size() {
+        return deadLetters.size();
+    }
+
+    /**
+     * @return number of failed deliveries waiting for a retry
+     */
+    public int getPendingRetryCount() {
+        return pendingRetries.get();
+    }
+
+    /**
+     * Removes the dead letter and delivers it to its listener again on the calling thread, a failure starts a new
+     * series of retries.
+     *
+     * @return false if the dead letter isn't stored anymore
+     */
+    public boolean replay(@NotNull DeadLetter deadLetter) {
+        synchronized (this) {
+            if (!deadLetters.remove(deadLetter)) {
+                return false;
+            }
+        }
+
+        retry(new DeadLetter(deadLetter.message, deadLetter.listener, deadLetter.cause, 0));
+        return true;
+    }
+
+    /**
+     * Replays all stored dead letters, see {@link #replay(DeadLetter)}.
+     *
+     * @return number of replayed dead letters
+     */
+    public int replayAll() {
+        List<DeadLetter> replayed;
+        synchronized (this) {
+            replayed = new ArrayList<>(deadLetters);
+            deadLetters.clear();
+        }
+
+        for (DeadLetter deadLetter : replayed) {
+            retry(new DeadLetter(deadLetter.message, deadLetter.listener, deadLetter.cause, 0));
+        }
+        return replayed.size();
+    }
+
+    public boolean remove(@NotNull DeadLetter deadLetter) {
+        synchronized (this) {
+            if (!deadLetters.remove(deadLetter)) {
+                return false;
+            }
+        }
+
+        deadLetter.message.release();
+        return true;
+    }
+
+    public void clear() {
+        List<DeadLetter> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(deadLetters);
+            deadLetters.clear();
+        }
+
+        for (DeadLetter deadLetter : removed) {
+            deadLetter.message.release();
+        }
+    }
+
+    private void failed(final DeadLetter deadLetter) {
+        if (deadLetter.attempts > maxRetries) {
+            store(deadLetter);
+            return;
+        }
+
+        long backoff = initialBackoffNanos << Math.min(deadLetter.attempts - 1, 30);
+        if (backoff <= 0L || backoff > maxBackoffNanos) {
+            backoff = maxBackoffNanos;
+        }
+
+        LOGGER.debug("Retrying delivery of {} to [{}] in {} ms", deadLetter.message, deadLetter.listener,
+                TimeUnit.NANOSECONDS.toMillis(backoff));
+        pendingRetries.incrementAndGet();
+        try {
+            timingWheel.schedule(new RetryTimeout(deadLetter), backoff, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingRetries.decrementAndGet();
+            store(deadLetter);
+        }
+    }
+
+    private void retry(DeadLetter deadLetter) {
+        try {
+            deadLetter.listener.receive(deadLetter.message);
+            deadLetter.message.release();
+        } catch (MessageListenerException | RuntimeException e) {
+            failed(new DeadLetter(deadLetter.message, deadLetter.listener, e, deadLetter.attempts + 1));
+        }
+    }
+
+    private void store(DeadLetter deadLetter) {
+        LOGGER.error("Giving up delivery of {} to [{}] after {} attempts", deadLetter.message, deadLetter.listener,
+                deadLetter.attempts, deadLetter.cause);
+
+        DeadLetter evicted = null;
+        synchronized (this) {
+            if (deadLetters.size() >= capacity) {
+                evicted = deadLetters.pollFirst();
+            }
+            deadLetters.addLast(deadLetter);
+        }
+
+        if (evicted != null) {
+            evicted.message.release();
+        }
+    }
+
+    private synchronized Executor getRetryExecutor() {
+        if (retryExecutor == null) {
+            retryExecutor = Executors.newCachedThreadPool(AsyncDispatchers.daemonThreadFactory("messagebus-retry-"));
+        }
+        return retryExecutor;
+    }
+
+    /**
+     * Hands the retry over to the retry executor when it expires, the thread of the wheel never runs a listener.
+     */
+    private final class RetryTimeout extends TimingWheel.Timeout implements Runnable {
+        private final DeadLetter deadLetter;
+
+        private RetryTimeout(DeadLetter deadLetter) {
+            this.deadLetter = deadLetter;
+        }
+
+        @Override
+        void expire() {
+            try {
+                getRetryExecutor().execute(this);
+            } catch (RejectedExecutionException e) {
+                LOGGER.error("Retry executor rejected retry of {}", deadLetter, e);
+                pendingRetries.decrementAndGet();
+                store(deadLetter);
+            }
+        }
+
+        @Override
+        public void run() {
+            pendingRetries.decrementAndGet();
+            retry(deadLetter);
+        }
+
+        /**
+         * Called for the pending retries when the bus shuts down.
+         */
+        @Override
+        void cancelled() {
+            pendingRetries.decrementAndGet();
+            store(deadLetter);
+        }
+    }
+
+    /**
+     * Delivery which failed for a listener.
+     */
+    public static final class DeadLetter {
+        private final Message message;
+        private final MessageListener listener;
+        private final Throwable cause;
+        private final int attempts;
+        private final long failedAtMillis;
+
+        private DeadLetter(Message message, MessageListener listener, Throwable cause, int attempts) {
+            this.message = message;
+            this.listener = listener;
+            this.cause = cause;
+            this.attempts = attempts;
+            this.failedAtMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * The message stays valid as long as the dead letter is stored, retain it to keep it longer.
+         */
+        @NotNull
+        public Message getMessage() {
+            return message;
+        }
+
+        @NotNull
+        public MessageListener getListener() {
+            return listener;
+        }
+
+        /**
+         * @return failure of the last attempt
+         */
+        @NotNull
+        public Throwable getCause() {
+            return cause;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public long getFailedAtMillis() {
+            return failedAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "DeadLetter{message=" + message +
+                    ", listener=" + listener +
+                    ", attempts=" + attempts +
+                    ", cause=" + cause +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Message waiting on the timing wheel of the bus. The bus sends the messages expiring in the same tick as batches.
+ */
+final class DelayedMessage extends TimingWheel.Timeout implements ScheduledMessage {
+    @NotNull
+    final Message message;
+    @NotNull
+    final Sender sender;
+
+    DelayedMessage(@NotNull Message message, @NotNull Sender sender) {
+        this.message = message;
+        this.sender = sender;
+    }
+
+    @Override
+    public boolean cancel() {
+        return super.cancel();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return super.isCancelled();
+    }
+
+    @Override
+    public boolean isSent() {
+        return isExpired();
+    }
+
+    @Override
+    void cancelled() {
+        message.release();
+    }
+
+    @Override
+    public String toString() {
+        return "DelayedMessage{message=" + message + '}';
+    }
+}
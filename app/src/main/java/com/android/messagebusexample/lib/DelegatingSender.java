@@ -0,0 +1,37 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Sender wrapped by the bus or a dispatcher to carry state of a single dispatch along with the message, so the
+ * message itself, which may be shared by other sends, isn't changed. Wrappers are removed again before the message is
+ * sent to its listeners.
+ */
+abstract class DelegatingSender implements Sender {
+    @NotNull
+    final Sender sender;
+
+    DelegatingSender(@NotNull Sender sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public void send(Message what, Iterable<? extends MessageListener> to) throws MessageListenerException {
+        sender.send(what, to);
+    }
+
+    /**
+     * @return the priority the message was sent with, null if it was sent with its own priority
+     */
+    @Nullable
+    static Priority sendPriorityOf(@NotNull Sender sender) {
+        while (sender instanceof DelegatingSender) {
+            if (sender instanceof PrioritizedSender) {
+                return ((PrioritizedSender) sender).priority;
+            }
+            sender = ((DelegatingSender) sender).sender;
+        }
+        return null;
+    }
+}
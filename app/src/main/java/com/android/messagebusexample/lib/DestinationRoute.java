@@ -0,0 +1,141 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable listeners of one destination indexed by action. Listeners registered for {@link Message#ACTION_ANY}
+ * receive every message of the destination, the others only messages with their action. The listeners of every
+ * known action are merged with the {@link Message#ACTION_ANY} ones up front, so a send does a single map lookup.
+ */
+final class DestinationRoute {
+    static final DestinationRoute EMPTY = new DestinationRoute(MessageListeners.EMPTY,
+            Collections.<String, MessageListeners>emptyMap());
+
+    @NotNull
+    private final MessageListeners anyActionListeners;
+
+    @NotNull
+    private final Map<String, MessageListeners> actionListeners;
+
+    @NotNull
+    private final Map<String, MessageListeners> resolvedActionListeners;
+
+    private DestinationRoute(@NotNull MessageListeners anyActionListeners,
+                             @NotNull Map<String, MessageListeners> actionListeners) {
+        this.anyActionListeners = anyActionListeners;
+        this.actionListeners = actionListeners;
+
+        if (actionListeners.isEmpty()) {
+            this.resolvedActionListeners = Collections.emptyMap();
+        } else {
+            Map<String, MessageListeners> resolved = new HashMap<>(actionListeners.size() * 2);
+            for (Map.Entry<String, MessageListeners> entry : actionListeners.entrySet()) {
+                resolved.put(entry.getKey(), entry.getValue().mergedWith(anyActionListeners));
+            }
+            this.resolvedActionListeners = resolved;
+        }
+    }
+
+    /**
+     * @return listeners which should receive a message with the given action, sorted from high to low priority
+     */
+    @NotNull
+    MessageListeners getListeners(@Nullable String action) {
+        if (action == null || resolvedActionListeners.isEmpty() || Message.ACTION_ANY.equals(action)) {
+            return anyActionListeners;
+        }
+
+        MessageListeners listeners = resolvedActionListeners.get(action);
+        return listeners != null ? listeners : anyActionListeners;
+    }
+
+    boolean isEmpty() {
+        return anyActionListeners.isEmpty() && actionListeners.isEmpty();
+    }
+
+    boolean contains(@NotNull String action, @NotNull MessageListener listener) {
+        return getRegisteredListeners(action).contains(listener);
+    }
+
+    @NotNull
+    DestinationRoute with(@NotNull String action, @NotNull MessageListener listener, @NotNull Priority priority) {
+        if (Message.ACTION_ANY.equals(action)) {
+            return new DestinationRoute(anyActionListeners.with(listener, priority), actionListeners);
+        }
+
+        Map<String, MessageListeners> newActionListeners = new HashMap<>(actionListeners);
+        newActionListeners.put(action, getRegisteredListeners(action).with(listener, priority));
+        return new DestinationRoute(anyActionListeners, newActionListeners);
+    }
+
+    /**
+     * @return route without the listener for the action or this if it wasn't registered for it
+     */
+    @NotNull
+    DestinationRoute without(@NotNull String action, @NotNull MessageListener listener) {
+        if (Message.ACTION_ANY.equals(action)) {
+            MessageListeners remaining = anyActionListeners.without(listener);
+            return remaining == anyActionListeners ? this : new DestinationRoute(remaining, actionListeners);
+        }
+
+        MessageListeners registered = getRegisteredListeners(action);
+        MessageListeners remaining = registered.without(listener);
+        if (remaining == registered) {
+            return this;
+        }
+
+        Map<String, MessageListeners> newActionListeners = new HashMap<>(actionListeners);
+        if (remaining.isEmpty()) {
+            newActionListeners.remove(action);
+        } else {
+            newActionListeners.put(action, remaining);
+        }
+        return new DestinationRoute(anyActionListeners, newActionListeners);
+    }
+
+    /**
+     * @return route without the listener for any action
+     */
+    @NotNull
+    DestinationRoute without(@NotNull MessageListener listener) {
+        DestinationRoute route = without(Message.ACTION_ANY, listener);
+        for (String action : actionListeners.keySet()) {
+            route = route.without(action, listener);
+        }
+        return route;
+    }
+
+    /**
+     * @return route with the listeners of both routes, listeners of this route go first on equal priority
+     */
+    @NotNull
+    DestinationRoute mergedWith(@NotNull DestinationRoute other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+
+        Map<String, MessageListeners> mergedActionListeners = new HashMap<>(actionListeners);
+        for (Map.Entry<String, MessageListeners> entry : other.actionListeners.entrySet()) {
+            mergedActionListeners.put(entry.getKey(), getRegisteredListeners(entry.getKey()).mergedWith(entry.getValue()));
+        }
+        return new DestinationRoute(anyActionListeners.mergedWith(other.anyActionListeners), mergedActionListeners);
+    }
+
+    @NotNull
+    private MessageListeners getRegisteredListeners(String action) {
+        if (Message.ACTION_ANY.equals(action)) {
+            return anyActionListeners;
+        }
+
+        MessageListeners listeners = actionListeners.get(action);
+        return listeners != null ? listeners : MessageListeners.EMPTY;
+    }
+}
@@ -0,0 +1,168 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Segment trie of the routes registered for destination patterns. Destinations are split on dots,
+ * {@value #ANY_SEGMENT} in a pattern matches exactly one segment and {@value #ANY_SEGMENTS} zero or more segments,
+ * e.g. {@code com.android.messagebusexample.*} or {@code com.android.#}.
+ * Matching walks only the trie branches which fit the destination instead of testing every pattern.
+ * <p>
+ * Changes must be serialized by the caller, lookups may run concurrently with them.
+ */
+final class DestinationTrie {
+    static final String ANY_SEGMENT = "*";
+    static final String ANY_SEGMENTS = "#";
+
+    private static final char SEPARATOR = '.';
+
+    private final Node root = new Node();
+    private volatile int size;
+
+    static boolean isPattern(@NotNull String destination) {
+        for (String segment : split(destination)) {
+            if (ANY_SEGMENT.equals(segment) || ANY_SEGMENTS.equals(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @NotNull
+    DestinationRoute get(@NotNull String pattern) {
+        Node node = root;
+        for (String segment : split(pattern)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return DestinationRoute.EMPTY;
+            }
+        }
+        return node.route;
+    }
+
+    /**
+     * Stores the route of the pattern, an empty route removes the pattern.
+     */
+    void put(@NotNull String pattern, @NotNull DestinationRoute route) {
+        String[] segments = split(pattern);
+        if (route.isEmpty()) {
+            remove(root, segments, 0);
+            return;
+        }
+
+        Node node = root;
+        for (String segment : segments) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+
+        if (node.route.isEmpty()) {
+            size++;
+        }
+        node.route = route;
+    }
+
+    private boolean remove(Node node, String[] segments, int index) {
+        if (index == segments.length) {
+            if (!node.route.isEmpty()) {
+                node.route = DestinationRoute.EMPTY;
+                size--;
+            }
+        } else {
+            Node child = node.children.get(segments[index]);
+            if (child != null && remove(child, segments, index + 1)) {
+                node.children.remove(segments[index]);
+            }
+        }
+        return node.route.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * @return merged routes of all patterns matching the destination
+     */
+    @NotNull
+    DestinationRoute match(@NotNull String destination) {
+        List<DestinationRoute> matches = new ArrayList<>();
+        collect(root, split(destination), 0, matches);
+
+        DestinationRoute route = DestinationRoute.EMPTY;
+        for (DestinationRoute match : matches) {
+            route = route.mergedWith(match);
+        }
+        return route;
+    }
+
+    private static void collect(Node node, String[] segments, int index, List<DestinationRoute> matches) {
+        Node anySegments = node.children.get(ANY_SEGMENTS);
+        if (anySegments != null) {
+            for (int i = index; i <= segments.length; i++) {
+                collect(anySegments, segments, i, matches);
+            }
+        }
+
+        if (index == segments.length) {
+            addMatch(node.route, matches);
+            return;
+        }
+
+        Node exact = node.children.get(segments[index]);
+        if (exact != null) {
+            collect(exact, segments, index + 1, matches);
+        }
+        Node anySegment = node.children.get(ANY_SEGMENT);
+        if (anySegment != null) {
+            collect(anySegment, segments, index + 1, matches);
+        }
+    }
+
+    private static void addMatch(DestinationRoute route, List<DestinationRoute> matches) {
+        if (route.isEmpty()) {
+            return;
+        }
+        for (DestinationRoute match : matches) {
+            if (match == route) {
+                return;
+            }
+        }
+        matches.add(route);
+    }
+
+    private static String[] split(String destination) {
+        int count = 1;
+        for (int i = 0; i < destination.length(); i++) {
+            if (destination.charAt(i) == SEPARATOR) {
+                count++;
+            }
+        }
+
+        String[] segments = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = destination.indexOf(SEPARATOR, start);
+            segments[i] = destination.substring(start, end);
+            start = end + 1;
+        }
+        segments[count - 1] = destination.substring(start);
+        return segments;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        @NotNull
+        private volatile DestinationRoute route = DestinationRoute.EMPTY;
+    }
+}
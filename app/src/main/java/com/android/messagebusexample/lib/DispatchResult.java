@@ -0,0 +1,23 @@
+package com.android.messagebusexample.lib;
+
+/**
+ * Outcome of {@link MessageBus#trySendMessageAsync(Message, Sender)}.
+ */
+public enum DispatchResult {
+    /**
+     * The message is queued for delivery.
+     */
+    ACCEPTED,
+    /**
+     * The queue was full and the message was dropped.
+     */
+    DROPPED,
+    /**
+     * The queue stayed full for the whole timeout and the message was dropped.
+     */
+    TIMED_OUT,
+    /**
+     * The queue was full or the dispatcher is shut down, the message was not queued.
+     */
+    REJECTED
+}
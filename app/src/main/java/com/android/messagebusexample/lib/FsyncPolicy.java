@@ -0,0 +1,22 @@
+package com.android.messagebusexample.lib;
+
+/**
+ * When the journal of a durable dispatcher forces its memory-mapped segments to storage, see
+ * {@link AsyncDispatchers#durable(java.io.File, AsyncDispatcher)}. Journaled messages survive a crash of the process
+ * with every policy, the policies differ in what survives a crash of the device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Leaves writing to storage to the operating system.
+     */
+    NEVER,
+    /**
+     * Forces the journal in the background once per flush interval, a send doesn't wait for it.
+     */
+    INTERVAL,
+    /**
+     * A send returns once its message is forced to storage. Sends waiting at the same time share a single force, so
+     * there is no force per message under concurrent load, a lone sender still waits for a force per send.
+     */
+    GROUP_COMMIT
+}
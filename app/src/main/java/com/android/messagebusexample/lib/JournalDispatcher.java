@@ -0,0 +1,501 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatcher appending every message to a write-ahead journal before handing it to the delegate dispatcher, so
+ * messages not delivered yet are replayed when the dispatcher is started again after a crash.
+ * <p>
+ * The journal is a sequence of memory-mapped segment files. An entry is its length, a state byte and the message
+ * encoded in place by the {@link MessageCodec}, the length is written last so a torn entry reads as the end of the
+ * segment. Once a message was delivered
+ * its state byte is set to acknowledged, a segment is deleted when the journal moved on to the next one and all its
+ * entries are acknowledged. Appends and acknowledgements are plain memory writes, storage is only forced according
+ * to the {@link FsyncPolicy}. Acknowledgements are never forced, so delivery is at least once: a message delivered
+ * shortly before a crash may be delivered again.
+ * <p>
+ * Messages left by a previous run are replayed by {@link #replay()} once the listeners are registered, they are sent
+ * with {@link Senders#simple()} as senders aren't journaled.
+ */
+public final class JournalDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalDispatcher.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 5;
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_ACKNOWLEDGED = 1;
+    private static final long NO_ROOM = -1L;
+
+    private final File directory;
+    private final AsyncDispatcher delegate;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long flushIntervalNanos;
+    private final ThreadFactory threadFactory;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final MessageCodec codec;
+
+    // guarded by this
+    private Segment current;
+    private long appendedCount;
+
+    // guarded by flushLock
+    private final Object flushLock = new Object();
+    private long forcedCount;
+    private long commitRequestedCount;
+    private List<Segment> unforcedSegments = new ArrayList<>();
+
+    private volatile boolean running;
+    private List<Entry> unacknowledged;
+
+    JournalDispatcher(File directory, AsyncDispatcher delegate, int segmentSize, FsyncPolicy fsyncPolicy,
+                      long flushIntervalNanos, MessageCodec codec, ThreadFactory threadFactory) {
+        Assert.notNull(directory, "directory parameter can't be null.");
+        Assert.notNull(delegate, "delegate parameter can't be null.");
+        Assert.isTrue(segmentSize > HEADER_SIZE, "segmentSize parameter is too small.");
+        Assert.notNull(fsyncPolicy, "fsyncPolicy parameter can't be null.");
+        Assert.isTrue(flushIntervalNanos > 0, "flushInterval parameter must be positive.");
+        Assert.notNull(codec, "codec parameter can't be null.");
+        Assert.notNull(threadFactory, "threadFactory parameter can't be null.");
+
+        this.directory = directory;
+        this.delegate = delegate;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.flushIntervalNanos = flushIntervalNanos;
+        this.codec = codec;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Opens the journal and starts the delegate.
+     */
+    @Override
+    public synchronized void start(final Delivery delivery) {
+        Assert.state(!running, "Dispatcher is already started.");
+
+        try {
+            unacknowledged = openJournal();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open message journal in " + directory, e);
+        }
+
+        delegate.start(new Delivery() {
+            @Override
+            public void deliver(Message message, Sender sender) {
+                JournaledSender journaled = (JournaledSender) sender;
+                try {
+                    delivery.deliver(message, journaled.sender);
+                } finally {
+                    acknowledge(journaled.positions);
+                }
+            }
+
+            @Override
+            public void deliverAll(List<Message> messages, Sender sender) {
+                JournaledSender journaled = (JournaledSender) sender;
+                try {
+                    delivery.deliverAll(messages, journaled.sender);
+                } finally {
+                    acknowledge(journaled.positions);
+                }
+            }
+        });
+
+        running = true;
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            threadFactory.newThread(new Flusher()).start();
+        }
+    }
+
+    /**
+     * Sends the messages which weren't delivered in a previous run, in the order they were journaled. Meant to be
+     * called once the listeners are registered, until then the messages stay in the journal.
+     *
+     * @return number of replayed messages
+     */
+    public int replay() {
+        List<Entry> entries;
+        synchronized (this) {
+            Assert.state(running, "Dispatcher is not running.");
+            entries = unacknowledged;
+            unacknowledged = Collections.emptyList();
+        }
+
+        LOGGER.debug("Replaying {} journaled messages", entries.size());
+        Sender sender = Senders.simple();
+        for (Entry entry : entries) {
+            delegate.dispatch(entry.message, new JournaledSender(sender, new long[]{entry.position}));
+        }
+        return entries.size();
+    }
+
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        long[] positions = new long[1];
+        long count = append(Collections.singletonList(message), positions);
+        awaitCommit(count);
+        delegate.dispatch(message, new JournaledSender(sender, positions));
+    }
+
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        long[] positions = new long[messages.size()];
+        long count = append(messages, positions);
+        awaitCommit(count);
+        delegate.dispatchAll(messages, new JournaledSender(sender, positions));
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        delegate.shutdown();
+    }
+
+    /**
+     * @param positions receives the positions of the entries of the messages
+     * @return number of messages appended so far, including these
+     */
+    private synchronized long append(List<Message> messages, long[] positions) {
+        if (!running) {
+            throw new RejectedExecutionException("Dispatcher is not running");
+        }
+
+        for (int i = 0; i < positions.length; i++) {
+            Message message = messages.get(i);
+            // encoded straight into the segment, rolled over if it doesn't fit into the rest of it
+            long position;
+            while ((position = tryAppend(message)) == NO_ROOM) {
+                Assert.isTrue(current.writePosition > 0, "Message doesn't fit into a journal segment: " + message);
+                rollSegment();
+            }
+            positions[i] = position;
+            appendedCount++;
+        }
+        return appendedCount;
+    }
+
+    /**
+     * @return position of the entry or {@link #NO_ROOM} if it doesn't fit into the rest of the segment
+     */
+    // guarded by this
+    private long tryAppend(Message message) {
+        int offset = current.writePosition;
+        ByteBuffer writer = current.writer;
+        if (offset + HEADER_SIZE > writer.limit()) {
+            return NO_ROOM;
+        }
+        writer.position(offset + 4);
+        try {
+            writer.put(STATE_PENDING);
+            codec.encode(message, writer);
+        } catch (BufferOverflowException e) {
+            clear(writer, offset);
+            return NO_ROOM;
+        } catch (RuntimeException e) {
+            clear(writer, offset);
+            throw new IllegalArgumentException("Can't journal message: " + message, e);
+        }
+
+        int end = writer.position();
+        // written last, marks the entry as complete
+        writer.putInt(offset, end - offset - 4);
+        current.writePosition = end;
+        current.pending.incrementAndGet();
+        return ((long) current.id << 32) | offset;
+    }
+
+    /**
+     * Zeroes a partially written entry, so recovery doesn't take what's left of it for the length of a later entry.
+     */
+    private static void clear(ByteBuffer writer, int offset) {
+        for (int i = offset, end = writer.position(); i < end; i++) {
+            writer.put(i, (byte) 0);
+        }
+    }
+
+    private void acknowledge(long[] positions) {
+        for (long position : positions) {
+            Segment segment = segments.get((int) (position >>> 32));
+            if (segment == null) {
+                continue;
+            }
+
+            segment.buffer.put((int) position + 4, STATE_ACKNOWLEDGED);
+            if (segment.pending.decrementAndGet() == 0 && segment.sealed) {
+                delete(segment);
+            }
+        }
+    }
+
+    private void awaitCommit(long count) {
+        if (fsyncPolicy != FsyncPolicy.GROUP_COMMIT) {
+            return;
+        }
+
+        boolean interrupted = false;
+        synchronized (flushLock) {
+            if (count > commitRequestedCount) {
+                commitRequestedCount = count;
+                flushLock.notifyAll();
+            }
+            while (forcedCount < count && running) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // guarded by this
+    private void rollSegment() {
+        Segment sealed = current;
+        try {
+            current = openSegment(sealed.id + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create journal segment in " + directory, e);
+        }
+
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            // forced by the flusher, storage is left to the OS otherwise
+            synchronized (flushLock) {
+                unforcedSegments.add(sealed);
+            }
+        }
+        sealed.sealed = true;
+        if (sealed.pending.get() == 0) {
+            delete(sealed);
+        }
+    }
+
+    /**
+     * Maps the segments left by a previous run and starts a new one after them.
+     *
+     * @return the entries which weren't acknowledged, in the order they were journaled
+     */
+    private List<Entry> openJournal() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Integer[] sortedIds = ids.toArray(new Integer[0]);
+        Arrays.sort(sortedIds);
+
+        List<Entry> unacknowledged = new ArrayList<>();
+        int lastId = -1;
+        for (int id : sortedIds) {
+            Segment segment = openSegment(id);
+            segment.sealed = true;
+            recover(segment, unacknowledged);
+            if (segment.pending.get() == 0) {
+                delete(segment);
+            }
+            lastId = id;
+        }
+
+        synchronized (this) {
+            current = openSegment(lastId + 1);
+        }
+        return unacknowledged;
+    }
+
+    private void recover(Segment segment, List<Entry> unacknowledged) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > buffer.capacity()) {
+                break;
+            }
+
+            if (buffer.get(position + 4) == STATE_PENDING) {
+                ByteBuffer reader = buffer.duplicate();
+                reader.limit(position + 4 + length);
+                reader.position(position + HEADER_SIZE);
+                try {
+                    Message message = codec.decode(reader, false);
+                    segment.pending.incrementAndGet();
+                    unacknowledged.add(new Entry(message, ((long) segment.id << 32) | position));
+                } catch (RuntimeException e) {
+                    LOGGER.error("Skipping unreadable journal entry at {} of {}", position, segment.file, e);
+                }
+            }
+            position += 4 + length;
+        }
+        segment.writePosition = position;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        File file = new File(directory, SEGMENT_PREFIX + String.format(Locale.US, "%010d", id) + SEGMENT_SUFFIX);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            long size = Math.max(randomAccessFile.length(), segmentSize);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(id, file, buffer);
+            segments.put(id, segment);
+            return segment;
+        } finally {
+            // the mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    private void delete(Segment segment) {
+        synchronized (segment) {
+            if (segment.deleted) {
+                return;
+            }
+            segment.deleted = true;
+        }
+
+        segments.remove(segment.id);
+        if (!segment.file.delete()) {
+            LOGGER.warn("Failed to delete journal segment {}", segment.file);
+        }
+    }
+
+    private final class Flusher implements Runnable {
+        private long lastForcedCount;
+
+        @Override
+        public void run() {
+            boolean last = false;
+            while (true) {
+                long count;
+                Segment segment;
+                List<Segment> sealed;
+                synchronized (JournalDispatcher.this) {
+                    count = appendedCount;
+                    segment = current;
+                }
+                synchronized (flushLock) {
+                    sealed = unforcedSegments;
+                    unforcedSegments = new ArrayList<>();
+                }
+
+                for (Segment sealedSegment : sealed) {
+                    force(sealedSegment);
+                }
+                if (count > lastForcedCount) {
+                    force(segment);
+                    lastForcedCount = count;
+                }
+
+                if (last) {
+                    return;
+                }
+                synchronized (flushLock) {
+                    forcedCount = count;
+                    flushLock.notifyAll();
+                    last = !awaitWork();
+                }
+            }
+        }
+
+        /**
+         * @return false once the dispatcher is shut down
+         */
+        // guarded by flushLock
+        private boolean awaitWork() {
+            try {
+                if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                    TimeUnit.NANOSECONDS.timedWait(flushLock, flushIntervalNanos);
+                } else {
+                    while (running && commitRequestedCount <= forcedCount) {
+                        flushLock.wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return running;
+        }
+
+        private void force(Segment segment) {
+            if (!segment.deleted) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Carries the journal positions of a dispatch through the delegate to its acknowledgement. Positions aren't kept
+     * on the messages, a message may be dispatched again before its first entry is acknowledged.
+     */
+    private static final class JournaledSender extends DelegatingSender {
+        private final long[] positions;
+
+        private JournaledSender(Sender sender, long[] positions) {
+            super(sender);
+            this.positions = positions;
+        }
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final long position;
+
+        private Entry(Message message, long position) {
+            this.message = message;
+            this.position = position;
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        // view used for appends only, guarded by the dispatcher
+        private final ByteBuffer writer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private int writePosition;
+        private volatile boolean sealed;
+        private volatile boolean deleted;
+
+        private Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+    }
+}
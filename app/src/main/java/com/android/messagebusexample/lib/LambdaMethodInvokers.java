@@ -0,0 +1,46 @@
+package com.android.messagebusexample.lib;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Binds subscriber methods through {@link LambdaMetafactory}, so the generated invokers call them directly
+ * instead of going through {@link Method#invoke}. Only loaded when the runtime provides java.lang.invoke.
+ */
+final class LambdaMethodInvokers {
+    private LambdaMethodInvokers() {
+    }
+
+    static SubscriberMethodInvoker create(Method method) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        Class<?> declaringClass = method.getDeclaringClass();
+
+        if (method.getParameterTypes().length == 0) {
+            CallSite callSite = LambdaMetafactory.metafactory(lookup,
+                    "invoke",
+                    MethodType.methodType(NoArgumentInvoker.class),
+                    MethodType.methodType(void.class, Object.class),
+                    target,
+                    MethodType.methodType(void.class, declaringClass));
+            NoArgumentInvoker invoker = (NoArgumentInvoker) callSite.getTarget().invokeWithArguments();
+            return (subscriber, message) -> invoker.invoke(subscriber);
+        }
+
+        CallSite callSite = LambdaMetafactory.metafactory(lookup,
+                "invoke",
+                MethodType.methodType(SubscriberMethodInvoker.class),
+                MethodType.methodType(void.class, Object.class, Message.class),
+                target,
+                MethodType.methodType(void.class, declaringClass, Message.class));
+        return (SubscriberMethodInvoker) callSite.getTarget().invokeWithArguments();
+    }
+
+    interface NoArgumentInvoker {
+        void invoke(Object subscriber) throws Exception;
+    }
+}
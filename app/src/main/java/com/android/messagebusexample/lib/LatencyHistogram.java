@@ -0,0 +1,57 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with fixed log-linear buckets: each power of 2 is split into 8 linear
+ * buckets, so a bucket is at most 12.5% wide relative to its values. Durations above about 18 minutes go into the
+ * last bucket. Recording is a single atomic increment, nothing is allocated per sample.
+ */
+final class LatencyHistogram {
+    static final int BUCKET_COUNT = 304;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int SUM_INDEX = BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT + 1);
+
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+        counts.getAndIncrement(bucketOf(value));
+        counts.getAndAdd(SUM_INDEX, value);
+    }
+
+    @NotNull
+    MetricsSnapshot.Histogram snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = counts.get(i);
+        }
+        return new MetricsSnapshot.Histogram(bucketCounts, counts.get(SUM_INDEX));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @return highest value counted in the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + (bucket & (SUB_BUCKET_COUNT - 1))) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
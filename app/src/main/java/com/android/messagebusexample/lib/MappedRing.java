@@ -0,0 +1,196 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Ring of encoded messages in a memory-mapped file, written by one process and read by another. The header holds the
+ * tail and head sequences, the byte counts written and read so far, each on its own cache line. A record is its
+ * length followed by the message, records are 4 byte aligned and a record which doesn't fit before the end of the
+ * ring is preceded by a padding record filling the rest. The writer only reuses bytes the head moved past, so the
+ * sequences are the flow control.
+ * <p>
+ * Sequences are ints compared by their difference, so they stay atomic on 32 bit devices and wrap around safely.
+ * {@link ByteBuffer} has no ordered puts before API 33, so a sequence is stored after a full fence, which keeps the
+ * accesses to the records before it from moving after the store, and loaded before one, which keeps the accesses
+ * after it from moving before the load. The fence is a write of a volatile field followed by a read of it: nothing
+ * before the write moves after it, nothing after the read moves before it, and the write stays before the read. ART
+ * compiles them to {@code stlr} and {@code ldar} or {@code dmb} barriers on ARM, ART and HotSpot to a locked
+ * instruction on x86. The Java memory model only promises this ordering to threads of one process, the ring relies
+ * on the runtime emitting these hardware barriers for another process to see it.
+ */
+final class MappedRing {
+    private static final int MAGIC = 0x4D425247;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEAD_OFFSET = 128;
+    private static final int DATA_OFFSET = 192;
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int PADDING = -1;
+
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writer;
+    private final ByteBuffer reader;
+    private final int capacity;
+    private final int mask;
+    private volatile int fence;
+    // owned by the writing side
+    private int tail;
+    // owned by the reading side
+    private int head;
+
+    private MappedRing(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.writer = buffer.duplicate();
+        this.reader = buffer.duplicate();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.tail = buffer.getInt(TAIL_OFFSET);
+        this.head = buffer.getInt(HEAD_OFFSET);
+    }
+
+    /**
+     * Maps the ring file, creating it if needed. Both processes have to use the same capacity.
+     *
+     * @param capacity power of 2
+     */
+    @NotNull
+    static MappedRing open(@NotNull File file, int capacity) throws IOException {
+        Assert.isTrue(capacity > 0 && (capacity & (capacity - 1)) == 0, "capacity parameter must be a power of 2.");
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+            } else if (buffer.getInt(CAPACITY_OFFSET) != capacity) {
+                throw new IOException("Ring " + file + " has a capacity of " + buffer.getInt(CAPACITY_OFFSET)
+                        + " bytes instead of " + capacity);
+            }
+            return new MappedRing(buffer, capacity);
+        } finally {
+            // the mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Encodes the message into the ring if there is room for it.
+     *
+     * @return false if the ring is too full, the reader has to catch up first
+     * @throws IllegalArgumentException if the message doesn't fit into the ring at all or can't be encoded
+     */
+    boolean offer(@NotNull Message message, @NotNull MessageCodec codec) {
+        int index = tail & mask;
+        int contiguous = capacity - index;
+        int free = capacity - (tail - buffer.getInt(HEAD_OFFSET));
+        // the bytes freed by the reader are only overwritten after it published the head
+        fullFence();
+
+        if (free > RECORD_HEADER_SIZE && tryWrite(message, codec, index, Math.min(contiguous, free))) {
+            return true;
+        }
+        if (contiguous < free) {
+            // the message may fit at the start of the ring
+            writer.putInt(DATA_OFFSET + index, PADDING);
+            publishTail(tail + contiguous);
+            return offer(message, codec);
+        }
+        Assert.isTrue(free < capacity, "Message doesn't fit into the ring: " + message);
+        return false;
+    }
+
+    private boolean tryWrite(Message message, MessageCodec codec, int index, int room) {
+        int start = DATA_OFFSET + index;
+        writer.limit(start + room);
+        writer.position(start + RECORD_HEADER_SIZE);
+        try {
+            codec.encode(message, writer);
+        } catch (BufferOverflowException e) {
+            return false;
+        } finally {
+            writer.limit(writer.capacity());
+        }
+
+        int length = writer.position() - start - RECORD_HEADER_SIZE;
+        writer.putInt(start, length);
+        publishTail(tail + align(RECORD_HEADER_SIZE + length));
+        return true;
+    }
+
+    /**
+     * A volatile write followed by a volatile read, no memory access moves across both of them.
+     */
+    private int fullFence() {
+        fence = 0;
+        return fence;
+    }
+
+    /**
+     * The record is written before the sequence which publishes it.
+     */
+    private void publishTail(int sequence) {
+        fullFence();
+        buffer.putInt(TAIL_OFFSET, sequence);
+        tail = sequence;
+    }
+
+    /**
+     * Decodes the next message and frees its bytes.
+     *
+     * @return null if the ring is empty
+     */
+    @Nullable
+    Message poll(@NotNull MessageCodec codec) {
+        while (true) {
+            if (buffer.getInt(TAIL_OFFSET) == head) {
+                return null;
+            }
+            // the record is read after the sequence which published it
+            fullFence();
+
+            int index = head & mask;
+            int start = DATA_OFFSET + index;
+            int length = buffer.getInt(start);
+            if (length == PADDING) {
+                publishHead(head + capacity - index);
+                continue;
+            }
+
+            reader.limit(start + RECORD_HEADER_SIZE + length);
+            reader.position(start + RECORD_HEADER_SIZE);
+            try {
+                return codec.decode(reader, false);
+            } finally {
+                reader.limit(reader.capacity());
+                publishHead(head + align(RECORD_HEADER_SIZE + length));
+            }
+        }
+    }
+
+    /**
+     * The record is read before the sequence which frees its bytes.
+     */
+    private void publishHead(int sequence) {
+        fullFence();
+        buffer.putInt(HEAD_OFFSET, sequence);
+        head = sequence;
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+}
@@ -5,18 +5,47 @@ import com.android.messagebusexample.lib.utils.Assert;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Messages created through the constructor or the factory methods are plain objects. Messages obtained
+ * from a {@link MessagePool} are recycled once their last reference is released: sending one hands the sender's
+ * reference to the bus, a listener which keeps the message after {@link MessageListener#receive(Message)} has to
+ * {@link #retain()} it and {@link #release()} it when done.
+ */
 public final class Message {
     public static final String ACTION_ANY = "";
     private static final String DESTINATION_UNKNOWN = "<unknown>";
 
+    private static final AtomicIntegerFieldUpdater<Message> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(Message.class, "references");
+
     @NotNull
-    private final String destination;
+    private String destination;
 
     @NotNull
     private final MessageData extraData;
 
     @Nullable
-    private final String action;
+    private String action;
+
+    @NotNull
+    private Priority priority = Priority.NORMAL;
+
+    @Nullable
+    private final MessagePool pool;
+
+    @Nullable
+    MessagePool.LocalPool home;
+
+    @Nullable
+    Message next;
+
+    // received from another process, so bridges don't send it back
+    boolean bridged;
+
+    private volatile int references;
+    private boolean recycled;
 
     public Message(@NotNull String destination, @Nullable String action, @NotNull MessageData extraData) {
         Assert.notNull(destination, "destination parameter can't be null.");
@@ -25,6 +54,14 @@ public final class Message {
         this.destination = destination;
         this.action = action;
         this.extraData = extraData;
+        this.pool = null;
+    }
+
+    Message(@NotNull MessagePool pool) {
+        this.destination = DESTINATION_UNKNOWN;
+        this.extraData = new MessageData();
+        this.pool = pool;
+        this.recycled = true;
     }
 
     public static Message empty() {
@@ -47,27 +84,106 @@ public final class Message {
 
     @NotNull
     public String getDestination() {
+        checkNotRecycled();
         return destination;
     }
 
     @Nullable
     public String getAction() {
+        checkNotRecycled();
         return action;
     }
 
     @NotNull
     public MessageData getExtraData() {
+        checkNotRecycled();
         return extraData;
     }
 
+    /**
+     * Priority of the message in the queues of a priority aware {@link AsyncDispatcher}, see
+     * {@link AsyncDispatchers#prioritized(int)}. Doesn't affect synchronous sends.
+     */
+    @NotNull
+    public Priority getPriority() {
+        checkNotRecycled();
+        return priority;
+    }
+
+    public void setPriority(@NotNull Priority priority) {
+        Assert.notNull(priority, "priority parameter can't be null.");
+        checkNotRecycled();
+
+        this.priority = priority;
+    }
+
     public boolean isSameDestination(@NotNull String destination) {
+        checkNotRecycled();
         return this.destination.equals(destination);
     }
 
     public boolean isSameAction(@NotNull String value) {
+        checkNotRecycled();
         return value.equals(action);
     }
 
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Takes an additional reference to a pooled message, does nothing for other messages.
+     */
+    public void retain() {
+        if (pool == null) {
+            return;
+        }
+
+        int previous = REFERENCES.getAndIncrement(this);
+        if (pool.isDebug()) {
+            Assert.state(previous > 0 && !recycled, "retain() of a recycled message: " + this);
+        }
+    }
+
+    /**
+     * Releases a reference to a pooled message, the message is recycled with the last one. Does nothing for other
+     * messages.
+     */
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+
+        int remaining = REFERENCES.decrementAndGet(this);
+        if (remaining == 0) {
+            pool.recycle(this);
+        } else if (remaining < 0 && pool.isDebug()) {
+            throw new IllegalStateException("release() of a recycled message: " + this);
+        }
+    }
+
+    void reuse(@NotNull String destination, @Nullable String action) {
+        this.destination = destination;
+        this.action = action;
+        this.recycled = false;
+        REFERENCES.set(this, 1);
+    }
+
+    void markRecycled() {
+        this.destination = DESTINATION_UNKNOWN;
+        this.action = ACTION_ANY;
+        this.priority = Priority.NORMAL;
+        this.bridged = false;
+        this.extraData.clear();
+        this.recycled = true;
+    }
+
+    private void checkNotRecycled() {
+        if (recycled && pool != null && pool.isDebug()) {
+            throw new IllegalStateException("Message used after it was recycled");
+        }
+    }
+
     public boolean isSameAction(@NotNull String[] values) {
         for (String s : values) {
             if (isSameAction(s)) {
@@ -91,6 +207,7 @@ public final class Message {
         return "Message" +
                 "{destination='" + destination + '\'' +
                 ", action='" + action + '\'' +
+                ", priority=" + priority +
                 '}';
     }
 
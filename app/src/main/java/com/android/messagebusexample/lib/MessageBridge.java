@@ -0,0 +1,150 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Mirrors destinations between the buses of two processes on the same host through two memory-mapped ring files in
+ * a shared directory, one per direction, without sockets or a broker. Messages sent to a mirrored destination in one
+ * process are encoded into the ring of the other one, its bridge thread decodes them and sends them async to its bus
+ * as if they were sent there. Messages received from a bridge aren't sent on by any bridge, so processes talking to
+ * several others open a bridge per pair.
+ * <p>
+ * Any thread of the process may send, sends are serialized on the bridge. A send waits according to the wait strategy
+ * while the ring is full, the other process has to drain it to make room. The receiving thread waits for messages
+ * according to the wait strategy as well, {@link WaitStrategy#BUSY_SPIN} and {@link WaitStrategy#YIELD} keep the
+ * latency in microseconds at the cost of a busy core. Messages left in a ring when a process exits are received once
+ * the other side opens its bridge again.
+ * <p>
+ * With dispatchers which block when full, like {@link AsyncDispatchers#ringBuffer(int, int, WaitStrategy)}, traffic
+ * flooding both directions can fill both rings and both dispatchers at once and stall the processes on each other.
+ */
+public final class MessageBridge {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageBridge.class);
+
+    private static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private final MessageBus bus;
+    private final List<String> destinations;
+    private final MessageCodec codec;
+    private final WaitStrategy waitStrategy;
+    private final MappedRing outbound;
+    private final MappedRing inbound;
+    private final MessageListener forwarder = this::send;
+    private volatile boolean running = true;
+
+    private MessageBridge(MessageBus bus, List<String> destinations, MessageCodec codec, WaitStrategy waitStrategy,
+                          MappedRing outbound, MappedRing inbound) {
+        this.bus = bus;
+        this.destinations = destinations;
+        this.codec = codec;
+        this.waitStrategy = waitStrategy;
+        this.outbound = outbound;
+        this.inbound = inbound;
+    }
+
+    /**
+     * Opens the bridge with 1 MB rings, parking when idle.
+     *
+     * @param localName  name of this process, the other process opens the bridge with the names swapped
+     * @param remoteName name of the other process
+     */
+    public static MessageBridge open(MessageBus bus, File directory, String localName, String remoteName,
+                                     List<String> destinations) throws IOException {
+        return open(bus, directory, localName, remoteName, destinations, DEFAULT_CAPACITY, WaitStrategy.PARK,
+                MessageCodec.create());
+    }
+
+    /**
+     * @param capacity     size of each ring in bytes, a power of 2, both processes have to use the same
+     * @param waitStrategy how senders wait for room and the bridge thread waits for messages
+     * @param codec        codec of the messages, both processes have to use the same dictionary
+     */
+    public static MessageBridge open(MessageBus bus, File directory, String localName, String remoteName,
+                                     List<String> destinations, int capacity, WaitStrategy waitStrategy,
+                                     MessageCodec codec) throws IOException {
+        Assert.notNull(bus, "bus parameter can't be null.");
+        Assert.notNull(directory, "directory parameter can't be null.");
+        Assert.hasLength(localName, "localName parameter can't be empty.");
+        Assert.hasLength(remoteName, "remoteName parameter can't be empty.");
+        Assert.isTrue(!localName.equals(remoteName), "localName and remoteName parameters can't be equal.");
+        Assert.notNull(destinations, "destinations parameter can't be null.");
+        Assert.notNull(waitStrategy, "waitStrategy parameter can't be null.");
+        Assert.notNull(codec, "codec parameter can't be null.");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+        MappedRing outbound = MappedRing.open(new File(directory, localName + "-" + remoteName + ".ring"), capacity);
+        MappedRing inbound = MappedRing.open(new File(directory, remoteName + "-" + localName + ".ring"), capacity);
+
+        MessageBridge bridge = new MessageBridge(bus, new ArrayList<>(destinations), codec, waitStrategy, outbound,
+                inbound);
+        bridge.start(AsyncDispatchers.daemonThreadFactory("messagebus-bridge-" + remoteName + "-"));
+        return bridge;
+    }
+
+    /**
+     * Stops mirroring, messages not received yet stay in the rings.
+     */
+    public void close() {
+        running = false;
+        for (String destination : destinations) {
+            bus.unregisterListener(destination, forwarder);
+        }
+    }
+
+    private void start(ThreadFactory threadFactory) {
+        threadFactory.newThread(this::receive).start();
+        for (String destination : destinations) {
+            bus.registerListener(destination, forwarder);
+        }
+    }
+
+    private void send(Message message) {
+        if (message.bridged) {
+            return;
+        }
+
+        synchronized (outbound) {
+            int counter = 0;
+            while (running && !outbound.offer(message, codec)) {
+                counter = waitStrategy.idle(counter);
+            }
+        }
+    }
+
+    private void receive() {
+        int counter = 0;
+        while (running) {
+            Message message;
+            try {
+                message = inbound.poll(codec);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to read bridged message", e);
+                continue;
+            }
+
+            if (message == null) {
+                counter = waitStrategy.idle(counter);
+                continue;
+            }
+            counter = 0;
+            message.bridged = true;
+            try {
+                bus.sendMessageAsync(message);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to send bridged message: {}", message, e);
+            }
+        }
+    }
+}
@@ -2,31 +2,163 @@ package com.android.messagebusexample.lib;
 
 import com.android.messagebusexample.lib.utils.Assert;
 import com.android.messagebusexample.lib.utils.StringUtils;
-import com.google.common.base.Optional;
 
-import org.jetbrains.annotations.NotNull;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class MessageBus {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageBus.class);
+    private static final long TIMER_TICK_MILLIS = 10L;
 
-    private final Map<String, List<MessageListenerWithPriority>> listeners = new ConcurrentHashMap<>();
-    private final Executor executor;
+    private final RouteTable routes = new RouteTable();
+    private final AsyncDispatcher asyncDispatcher;
+    @Nullable
+    private final MessagePool messagePool;
     private final Sender defaultSender = Senders.simple();
+    private final SubscriberMethodFinder subscriberMethodFinder = new SubscriberMethodFinder();
+    private final Map<Class<?>, Integer> registeredSubscriberCounts = new HashMap<>();
+    private final Map<String, Conflation> conflations = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel = new TimingWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+            AsyncDispatchers.daemonThreadFactory("messagebus-timer-"), this::expired);
+    private final RequestTable requests = new RequestTable(timingWheel);
+    private final StickyCache stickyCache = new StickyCache(64);
+    private Executor publisherExecutor;
+    @Nullable
+    private volatile BusMetrics metrics;
 
     public MessageBus(Executor executor) {
-        this.executor = executor;
+        this(executor, null);
+    }
+
+    public MessageBus(Executor executor, @Nullable MessagePool messagePool) {
+        this(AsyncDispatchers.executor(executor), messagePool);
+    }
+
+    public MessageBus(AsyncDispatcher asyncDispatcher) {
+        this(asyncDispatcher, null);
+    }
+
+    /**
+     * @param asyncDispatcher engine of the async sends, see {@link AsyncDispatchers}
+     * @param messagePool     pool of the messages created by the bus itself and by {@link #obtainMessage(String)},
+     *                        null disables pooling
+     */
+    public MessageBus(AsyncDispatcher asyncDispatcher, @Nullable MessagePool messagePool) {
+        Assert.notNull(asyncDispatcher, "asyncDispatcher parameter can't be null.");
+
+        this.asyncDispatcher = asyncDispatcher;
+        this.messagePool = messagePool;
+        asyncDispatcher.start(new AsyncDispatcher.Delivery() {
+            @Override
+            public void deliver(Message message, Sender sender) {
+                if (sender instanceof TimedSender) {
+                    TimedSender timed = (TimedSender) sender;
+                    sender = timed.sender;
+                    timed.dequeued(message);
+                }
+                sender = withoutPriority(sender);
+
+                Conflation conflation = conflationOf(message);
+                Conflation.Pending latest = conflation == null ? null : conflation.take(message);
+                if (latest != null) {
+                    sendMessageSilently(latest.latest, withoutPriority(latest.latestSender));
+                } else {
+                    sendMessageSilently(message, sender);
+                }
+            }
+
+            @Override
+            public void deliverAll(List<Message> messages, Sender sender) {
+                if (sender instanceof TimedSender) {
+                    TimedSender timed = (TimedSender) sender;
+                    sender = timed.sender;
+                    for (Message message : messages) {
+                        timed.dequeued(message);
+                    }
+                }
+                sender = withoutPriority(sender);
+
+                sendMessagesSilently(messages, sender);
+            }
+        });
+    }
+
+    /**
+     * Shuts the async dispatcher down, messages already sent async are still delivered. Delayed messages which aren't
+     * sent yet are cancelled.
+     */
+    public void shutdown() {
+        timingWheel.stop();
+        asyncDispatcher.shutdown();
+    }
+
+    /**
+     * Starts recording metrics: per destination the messages sent, listener calls, failures, messages without
+     * listeners, async queue depth and the lag of async messages, per listener its execution times. Counters are
+     * striped so concurrent senders don't contend on them. While metrics are disabled sends only check whether they
+     * are enabled.
+     */
+    public synchronized void enableMetrics() {
+        if (metrics == null) {
+            metrics = new BusMetrics();
+        }
+    }
+
+    /**
+     * Stops recording metrics and drops the recorded ones.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Meant to be polled by an exporter, taking a snapshot doesn't block senders.
+     *
+     * @return metrics recorded since they were enabled, empty if they are disabled
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        BusMetrics current = metrics;
+        if (current == null) {
+            return MetricsSnapshot.EMPTY;
+        }
+        return current.snapshot(asyncDispatcher instanceof BoundedDispatcher ? (BoundedDispatcher) asyncDispatcher
+                : null);
+    }
+
+    /**
+     * Returns a message from the pool of the bus or a new one if pooling is disabled. Sending the message hands
+     * its reference over to the bus, it must not be used by the caller afterwards.
+     */
+    public Message obtainMessage(String destination) {
+        return obtainMessage(destination, Message.ACTION_ANY);
+    }
+
+    public Message obtainMessage(String destination, @Nullable String action) {
+        if (messagePool == null) {
+            return Message.forDestinationAndAction(destination, action);
+        }
+        return messagePool.obtain(destination, action);
     }
 
     public void sendMessage(String destination) throws MessageBusException {
-        sendMessage(Message.forDestination(destination));
+        sendMessage(obtainMessage(destination));
     }
 
     public void sendMessage(Message message) throws MessageBusException {
@@ -41,7 +173,7 @@ public class MessageBus {
     }
 
     public void sendMessageSilently(String destination) {
-        sendMessageSilently(Message.forDestination(destination));
+        sendMessageSilently(obtainMessage(destination));
     }
 
     public void sendMessageSilently(Message message) {
@@ -57,86 +189,618 @@ public class MessageBus {
     }
 
     public void sendMessageAsync(String destination) {
-        sendMessageAsync(Message.forDestination(destination));
+        sendMessageAsync(obtainMessage(destination));
     }
 
     public void sendMessageAsync(final Message message) {
         sendMessageAsync(message, defaultSender);
     }
 
-    public void sendMessageAsync(final Message message, final Sender sender) {
-        executor.execute(() -> sendMessageSilently(message, sender));
+    public void sendMessageAsync(String destination, Priority priority) {
+        sendMessageAsync(obtainMessage(destination), priority);
+    }
+
+    /**
+     * Sends the message async with the given priority instead of its own, see {@link Message#setPriority(Priority)}.
+     * The priority only applies to this send, the message isn't changed.
+     */
+    public void sendMessageAsync(Message message, Priority priority) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(priority, "priority parameter can't be null.");
+
+        sendMessageAsync(message, new PrioritizedSender(defaultSender, priority));
+    }
+
+    public void sendMessageAsync(Message message, Sender sender) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(sender, "sender parameter can't be null.");
+
+        dispatch(message, sender);
+    }
+
+    public ScheduledMessage sendMessageDelayed(String destination, long delay, TimeUnit unit) {
+        return sendMessageDelayed(obtainMessage(destination), delay, unit);
+    }
+
+    public ScheduledMessage sendMessageDelayed(Message message, long delay, TimeUnit unit) {
+        return sendMessageDelayed(message, defaultSender, delay, unit);
+    }
+
+    /**
+     * Sends the message async once the delay elapsed, up to 10 milliseconds later. Delayed messages are kept on a
+     * timing wheel, scheduling and cancelling them costs the same with millions pending. The messages due at the same
+     * time are handed to the async dispatcher as one batch, see {@link #sendMessagesAsync(Collection, Sender)}.
+     *
+     * @return handle to cancel the message before it's sent
+     */
+    public ScheduledMessage sendMessageDelayed(Message message, Sender sender, long delay, TimeUnit unit) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(sender, "sender parameter can't be null.");
+        Assert.notNull(unit, "unit parameter can't be null.");
+        Assert.isTrue(delay >= 0, "delay parameter can't be negative.");
+
+        DelayedMessage delayed = new DelayedMessage(message, sender);
+        try {
+            timingWheel.schedule(delayed, delay, unit);
+        } catch (RuntimeException e) {
+            message.release();
+            throw e;
+        }
+        return delayed;
+    }
+
+    public ScheduledMessage sendMessageAt(Message message, long timeMillis) {
+        return sendMessageAt(message, defaultSender, timeMillis);
+    }
+
+    /**
+     * Like {@link #sendMessageDelayed(Message, Sender, long, TimeUnit)} with the delay until the time, in
+     * {@link System#currentTimeMillis()}. A time in the past sends the message with the next tick.
+     */
+    public ScheduledMessage sendMessageAt(Message message, Sender sender, long timeMillis) {
+        return sendMessageDelayed(message, sender, Math.max(0L, timeMillis - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void expired(List<TimingWheel.Timeout> timeouts) {
+        List<Message> batch = null;
+        Sender batchSender = null;
+        for (TimingWheel.Timeout timeout : timeouts) {
+            if (!(timeout instanceof DelayedMessage)) {
+                timeout.expire();
+                continue;
+            }
+
+            DelayedMessage delayed = (DelayedMessage) timeout;
+            if (batch != null && delayed.sender != batchSender) {
+                dispatchExpired(batch, batchSender);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batchSender = delayed.sender;
+            }
+            batch.add(delayed.message);
+        }
+        if (batch != null) {
+            dispatchExpired(batch, batchSender);
+        }
+    }
+
+    private void dispatchExpired(List<Message> messages, Sender sender) {
+        try {
+            asyncDispatcher.dispatchAll(messages, queued(messages, sender));
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("Failed to send delayed messages: {}", messages, e);
+            for (Message message : messages) {
+                message.release();
+            }
+        }
+    }
+
+    public DispatchResult trySendMessageAsync(Message message) {
+        return trySendMessageAsync(message, defaultSender);
+    }
+
+    /**
+     * Like {@link #sendMessageAsync(Message, Sender)} but reports whether a {@link BoundedDispatcher} accepted the
+     * message, other dispatchers always accept it. A message which isn't accepted is released by the bus.
+     */
+    public DispatchResult trySendMessageAsync(Message message, Sender sender) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(sender, "sender parameter can't be null.");
+
+        return dispatch(message, sender);
+    }
+
+    /**
+     * Marks the destination as conflating: an async message replaces the message pending for the destination instead
+     * of being queued after it, so slow listeners only receive the latest one. Meant for destinations carrying
+     * state, like {@link MessageDataConstants#NO_CONNECTIVITY} updates. Synchronous and batch sends aren't conflated.
+     * <p>
+     * With a {@link BoundedDispatcher} dropping the oldest messages a dropped pending message isn't replaced until
+     * conflation is stopped, don't combine both.
+     */
+    public void conflate(String destination) {
+        conflate(destination, null);
+    }
+
+    /**
+     * Like {@link #conflate(String)} but keeps a pending message per value of the extra data key, e.g. per sensor.
+     */
+    public void conflate(String destination, @Nullable String keyField) {
+        Assert.hasLength(destination, "destination parameter can't be null or empty.");
+        Assert.isTrue(!DestinationTrie.isPattern(destination), "conflating destination can't be a pattern: " + destination);
+
+        Conflation previous = conflations.put(destination, new Conflation(keyField));
+        if (previous != null) {
+            dispatchReplaced(previous);
+        }
+    }
+
+    /**
+     * Stops conflating the destination, messages waiting to replace a pending message are sent async.
+     */
+    public void stopConflating(String destination) {
+        Conflation conflation = conflations.remove(destination);
+        if (conflation != null) {
+            dispatchReplaced(conflation);
+        }
+    }
+
+    private void dispatchReplaced(Conflation conflation) {
+        for (Conflation.Pending pending : conflation.drain()) {
+            dispatch(pending.latest, pending.latestSender);
+        }
+    }
+
+    @Nullable
+    private Conflation conflationOf(Message message) {
+        return conflations.isEmpty() ? null : conflations.get(message.getDestination());
+    }
+
+    private DispatchResult dispatch(Message message, Sender sender) {
+        Conflation conflation = conflationOf(message);
+        if (conflation == null) {
+            return dispatchToDispatcher(message, sender);
+        }
+        if (!conflation.offer(message, sender)) {
+            return DispatchResult.ACCEPTED;
+        }
+
+        // keeps the message readable for cancel() in case the dispatcher releases it
+        message.retain();
+        try {
+            DispatchResult result = dispatchToDispatcher(message, sender);
+            if (result != DispatchResult.ACCEPTED) {
+                conflation.cancel(message);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            conflation.cancel(message);
+            throw e;
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * The send priority is only needed by the dispatcher, listeners get the sender it was sent with.
+     */
+    private static Sender withoutPriority(Sender sender) {
+        return sender instanceof PrioritizedSender ? ((PrioritizedSender) sender).sender : sender;
+    }
+
+    private DispatchResult dispatchToDispatcher(Message message, Sender sender) {
+        BusMetrics current = metrics;
+        if (current != null) {
+            current.queued(message);
+            sender = new TimedSender(sender, current);
+        }
+
+        if (asyncDispatcher instanceof BoundedDispatcher) {
+            return ((BoundedDispatcher) asyncDispatcher).offer(message, sender);
+        }
+
+        asyncDispatcher.dispatch(message, sender);
+        return DispatchResult.ACCEPTED;
+    }
+
+    /**
+     * Sends the message async as a request, a listener answers it with {@link #reply(Message, Message)}. The reply
+     * completes the returned future, which fails with a {@link java.util.concurrent.TimeoutException} if there is no
+     * reply within the timeout and with a {@link MessageBusException} if the destination has no listeners.
+     * The reply is handed over to the caller of the future, a pooled reply has to be released by it.
+     */
+    public ListenableFuture<Message> request(Message message, long timeout, TimeUnit unit) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(unit, "unit parameter can't be null.");
+        Assert.isTrue(timeout > 0, "timeout parameter must be positive.");
+
+        ListenableFuture<Message> reply = requests.register(message, timeout, unit);
+        if (routes.get(message.getDestination()).getListeners(message.getAction()).isEmpty()) {
+            requests.fail(message, new MessageBusException("No listeners for request: " + message));
+            message.release();
+            return reply;
+        }
+
+        try {
+            sendMessageAsync(message);
+        } catch (RuntimeException e) {
+            requests.fail(message, e);
+            throw e;
+        }
+        return reply;
+    }
+
+    /**
+     * Completes the future of the request with the reply, instead of sending the reply to a destination.
+     *
+     * @return false if the request isn't waiting for a reply anymore, e.g. timed out or already answered, the
+     * reply is released then
+     */
+    public boolean reply(Message request, Message reply) {
+        Assert.notNull(request, "request parameter can't be null.");
+        Assert.notNull(reply, "reply parameter can't be null.");
+
+        if (requests.complete(request, reply)) {
+            return true;
+        }
+
+        reply.release();
+        return false;
+    }
+
+    public void sendMessages(Collection<Message> messages) throws MessageBusException {
+        sendMessages(messages, defaultSender);
+    }
+
+    /**
+     * Sends the messages grouped by destination and action, the listeners of each group are resolved once.
+     * {@link BatchMessageListener}s receive a group in a single call after the other listeners received its messages
+     * one by one through the sender. The order of the messages is kept within a group only.
+     */
+    public void sendMessages(Collection<Message> messages, Sender sender) throws MessageBusException {
+        Assert.notNull(messages, "messages parameter can't be null.");
+        Assert.notNull(sender, "sender parameter can't be null.");
+
+        try {
+            doSendMessages(messages, sender);
+        } finally {
+            for (Message message : messages) {
+                message.release();
+            }
+        }
+    }
+
+    public void sendMessagesSilently(Collection<Message> messages, Sender sender) {
+        try {
+            sendMessages(messages, sender);
+        } catch (MessageBusException e) {
+            LOGGER.error("failed to deliver messages", e);
+        }
+    }
+
+    public void sendMessagesAsync(Collection<Message> messages) {
+        sendMessagesAsync(messages, defaultSender);
+    }
+
+    /**
+     * Hands the whole batch to the async dispatcher as a single task, see {@link #sendMessages(Collection, Sender)}.
+     */
+    public void sendMessagesAsync(Collection<Message> messages, Sender sender) {
+        Assert.notNull(messages, "messages parameter can't be null.");
+        Assert.notNull(sender, "sender parameter can't be null.");
+
+        if (!messages.isEmpty()) {
+            asyncDispatcher.dispatchAll(new ArrayList<>(messages), queued(messages, sender));
+        }
+    }
+
+    /**
+     * @return sender carrying the time the messages were queued at while metrics are enabled
+     */
+    private Sender queued(Collection<Message> messages, Sender sender) {
+        BusMetrics current = metrics;
+        if (current == null) {
+            return sender;
+        }
+
+        for (Message message : messages) {
+            current.queued(message);
+        }
+        return new TimedSender(sender, current);
+    }
+
+    /**
+     * Returns the interned handle of the destination, sends through it skip the validation and route lookup.
+     * Meant to be called once per destination and kept by the producer.
+     */
+    public synchronized Topic topic(String destination) {
+        Assert.hasLength(destination, "destination parameter can't be null or empty.");
+        Assert.isTrue(!DestinationTrie.isPattern(destination), "topic destination can't be a pattern: " + destination);
+
+        return routes.getTopic(destination, this);
+    }
+
+    /**
+     * Returns a reactive streams publisher of the messages sent to the destination, each subscriber buffers up to 256
+     * messages and drops the oldest ones when it falls behind. Subscribers are signalled on a shared pool of daemon
+     * threads.
+     */
+    public Publisher<Message> publisher(String destination) {
+        return publisher(destination, getPublisherExecutor(), 256, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param executor       signals the subscribers, one task at a time per subscriber
+     * @param bufferSize     messages buffered per subscriber until it requests them
+     * @param overflowPolicy {@link OverflowPolicy#DROP_NEWEST}, {@link OverflowPolicy#DROP_OLDEST} or
+     *                       {@link OverflowPolicy#REJECT}, which fails the subscriber with a
+     *                       {@link MessageBusException}
+     */
+    public Publisher<Message> publisher(String destination, Executor executor, int bufferSize,
+                                        OverflowPolicy overflowPolicy) {
+        Assert.hasLength(destination, "destination parameter can't be null or empty.");
+
+        return new MessagePublisher(this, destination, executor, bufferSize, overflowPolicy);
+    }
+
+    private synchronized Executor getPublisherExecutor() {
+        if (publisherExecutor == null) {
+            publisherExecutor = Executors.newCachedThreadPool(AsyncDispatchers.daemonThreadFactory("messagebus-publisher-"));
+        }
+        return publisherExecutor;
     }
 
     private void doSendMessage(Message message, Sender sender) throws MessageBusException {
         String destination = message.getDestination();
         if (StringUtils.isEmpty(destination)) {
+            message.release();
             throw new MessageBusException("Message destination can't be empty: " + message);
         }
 
+        deliver(message, routes.get(destination).getListeners(message.getAction()), sender);
+    }
+
+    private void doSendMessages(Collection<Message> messages, Sender sender) throws MessageBusException {
+        Map<String, Map<String, List<Message>>> messagesByDestinationAndAction = new LinkedHashMap<>();
+        for (Message message : messages) {
+            String destination = message.getDestination();
+            if (StringUtils.isEmpty(destination)) {
+                throw new MessageBusException("Message destination can't be empty: " + message);
+            }
+
+            if (!stickyCache.isEmpty()) {
+                stickyCache.offer(message);
+            }
+
+            Map<String, List<Message>> messagesByAction = messagesByDestinationAndAction.get(destination);
+            if (messagesByAction == null) {
+                messagesByAction = new LinkedHashMap<>();
+                messagesByDestinationAndAction.put(destination, messagesByAction);
+            }
+
+            String action = message.getAction() != null ? message.getAction() : Message.ACTION_ANY;
+            List<Message> group = messagesByAction.get(action);
+            if (group == null) {
+                group = new ArrayList<>();
+                messagesByAction.put(action, group);
+            }
+            group.add(message);
+        }
+
+        BusMetrics current = metrics;
+        for (Map.Entry<String, Map<String, List<Message>>> destinationEntry : messagesByDestinationAndAction.entrySet()) {
+            DestinationRoute route = routes.get(destinationEntry.getKey());
+            for (Map.Entry<String, List<Message>> actionEntry : destinationEntry.getValue().entrySet()) {
+                deliverGroup(destinationEntry.getKey(), actionEntry.getValue(), route.getListeners(actionEntry.getKey()), sender,
+                        current);
+            }
+        }
+    }
+
+    private static void deliverGroup(String destination, List<Message> group, MessageListeners messageListeners, Sender sender,
+                                     @Nullable BusMetrics metrics) throws MessageBusException {
+        if (metrics != null) {
+            metrics.delivered(destination, group.size(), messageListeners);
+            messageListeners = messageListeners.timed(metrics);
+        }
+        if (messageListeners.isEmpty()) {
+            LOGGER.warn("No listeners for destination {}", destination);
+            return;
+        }
+
         try {
-            Optional<? extends List<MessageListenerWithPriority>> messageListeners = getListenersForDestination(destination);
-            if (messageListeners.isPresent() && !messageListeners.get().isEmpty()) {
-                sender.send(message, messageListeners.get());
+            MessageListeners messageListenersOnly = messageListeners.getMessageListenersOnly();
+            if (!messageListenersOnly.isEmpty()) {
+                for (Message message : group) {
+                    sender.send(message, messageListenersOnly);
+                }
+            }
+
+            BatchMessageListener[] batchListeners = messageListeners.getBatchListeners();
+            if (batchListeners.length > 0) {
+                List<Message> readOnlyGroup = Collections.unmodifiableList(group);
+                for (BatchMessageListener batchListener : batchListeners) {
+                    batchListener.receiveAll(readOnlyGroup);
+                }
+            }
+        } catch (MessageListenerException | RuntimeException e) {
+            throw new MessageBusException("Failed to send " + group.size() + " messages to " + destination, e);
+        }
+    }
+
+    /**
+     * Releases the reference of pooled messages once all listeners returned.
+     */
+    void deliver(Message message, MessageListeners messageListeners, Sender sender) throws MessageBusException {
+        if (!stickyCache.isEmpty()) {
+            stickyCache.offer(message);
+        }
+        BusMetrics current = metrics;
+        if (current != null) {
+            current.delivered(message.getDestination(), 1, messageListeners);
+            messageListeners = messageListeners.timed(current);
+        }
+
+        try {
+            MessageListener singleListener = messageListeners.single();
+            if (singleListener != null && sender == defaultSender) {
+                singleListener.receive(message);
+            } else if (!messageListeners.isEmpty()) {
+                sender.send(message, messageListeners);
             } else {
-                LOGGER.warn("No listeners for destination {}", destination);
+                LOGGER.warn("No listeners for destination {}", message.getDestination());
             }
         } catch (MessageListenerException | RuntimeException e) {
             throw new MessageBusException("Failed to send a message: " + message, e);
+        } finally {
+            message.release();
         }
     }
 
+    void deliverSilently(Message message, MessageListeners messageListeners, Sender sender) {
+        try {
+            deliver(message, messageListeners, sender);
+        } catch (MessageBusException e) {
+            LOGGER.error("failed to deliver message: {}", message, e);
+        }
+    }
+
+    Sender getDefaultSender() {
+        return defaultSender;
+    }
+
+    TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
     public void registerListener(String[] destination, MessageListener listener) {
         registerListener(destination, Priority.NORMAL, listener);
     }
 
-    public synchronized void registerListener(String[] destination, Priority priority, MessageListener listener) {
-        for (String dest : destination) {
-            registerListener(dest, priority, listener);
+    /**
+     * The listener is registered for all destinations at once, sticky messages are delivered to it afterwards.
+     */
+    public void registerListener(String[] destination, Priority priority, MessageListener listener) {
+        Assert.notNull(destination, "destination parameter can't be null.");
+
+        List<AddedListener> added = new ArrayList<>(destination.length);
+        synchronized (this) {
+            for (String dest : destination) {
+                addListener(dest, Message.ACTION_ANY, priority, listener, added);
+            }
         }
+        replaySticky(added);
     }
 
     public void registerListener(String destination, MessageListener listener) {
         registerListener(destination, Priority.NORMAL, listener);
     }
 
-    @SuppressWarnings("FeatureEnvy")
-    public synchronized void registerListener(String destination, Priority priority, MessageListener listener) {
+    public void registerListener(String destination, Priority priority, MessageListener listener) {
+        registerListener(destination, Message.ACTION_ANY, priority, listener);
+    }
+
+    public void registerListener(String destination, String action, MessageListener listener) {
+        registerListener(destination, action, Priority.NORMAL, listener);
+    }
+
+    /**
+     * Registers the listener for messages of the destination with the given action only, {@link Message#ACTION_ANY}
+     * or null registers it for all messages of the destination. Registrations are serialized on the bus monitor and
+     * publish a new immutable route of the destination, senders never take the monitor.
+     * <p>
+     * The destination may be a pattern where {@code *} matches one dot separated segment and {@code #} any number
+     * of segments, e.g. {@code com.android.messagebusexample.*}.
+     * <p>
+     * The last messages of a {@link #sticky(String) sticky} destination are delivered to the listener on the calling
+     * thread before this method returns. Patterns don't receive sticky messages.
+     */
+    public void registerListener(String destination, String action, Priority priority, MessageListener listener) {
+        List<AddedListener> added = new ArrayList<>(1);
+        addListener(destination, action, priority, listener, added);
+        replaySticky(added);
+    }
+
+    /**
+     * Listeners which weren't registered yet are added to {@code added}, sticky messages are replayed to them once
+     * the monitor is released, so listeners sending or registering from other threads can't deadlock on it.
+     */
+    private synchronized void addListener(String destination, String action, Priority priority, MessageListener listener,
+                                          List<AddedListener> added) {
         Assert.hasLength(destination, "destination parameter can't be null or empty.");
         Assert.notNull(priority, "priority parameter can't be null.");
         Assert.notNull(listener, "listener parameter can't be null.");
 
-        Optional<? extends List<MessageListenerWithPriority>> messageListenersSortedByHighToLowPriority =
-                getListenersForDestination(destination);
-        if (!messageListenersSortedByHighToLowPriority.isPresent()) {
-            messageListenersSortedByHighToLowPriority = Optional.of(new CopyOnWriteArrayList<>());
-            listeners.put(destination, messageListenersSortedByHighToLowPriority.get());
-        }
-
-        MessageListenerWithPriority messageListenerWithPriority = new MessageListenerWithPriority(listener, priority);
-        if (messageListenersSortedByHighToLowPriority.get().contains(messageListenerWithPriority)) {
+        String routeAction = action != null ? action : Message.ACTION_ANY;
+        DestinationRoute route = routes.getRegistered(destination);
+        if (route.contains(routeAction, listener)) {
             LOGGER.debug("Attempt to add duplicate listener [{}] for {}", listener.getClass().getCanonicalName(), destination);
             return;
         }
 
-        insertMessageListenerIntoListByPriority(messageListenerWithPriority, messageListenersSortedByHighToLowPriority.get());
+        routes.put(destination, route.with(routeAction, listener, priority));
+        added.add(new AddedListener(destination, routeAction, listener));
     }
 
-    private static void insertMessageListenerIntoListByPriority(MessageListenerWithPriority listenerToInsert,
-                                                                List<MessageListenerWithPriority> messageListenersSortedByHighToLowPriority) {
-        Priority priority = listenerToInsert.getPriority();
+    private void replaySticky(List<AddedListener> added) {
+        if (stickyCache.isEmpty()) {
+            return;
+        }
 
-        int indexToInsert = 0;
-        for (MessageListenerWithPriority listener : messageListenersSortedByHighToLowPriority) {
-            Priority listItemPriority = listener.getPriority();
-            if (priority.isHigherThan(listItemPriority) || priority == listItemPriority) {
-                break;
-            } else {
-                indexToInsert += 1;
+        for (AddedListener addedListener : added) {
+            for (Message message : stickyCache.retain(addedListener.destination, addedListener.action)) {
+                try {
+                    addedListener.listener.receive(message);
+                } catch (MessageListenerException | RuntimeException e) {
+                    LOGGER.error("failed to deliver sticky message: {}", message, e);
+                } finally {
+                    message.release();
+                }
             }
         }
+    }
 
-        messageListenersSortedByHighToLowPriority.add(indexToInsert, listenerToInsert);
+    /**
+     * Makes the destination sticky: its last message is kept and delivered to listeners registered later, see
+     * {@link #registerListener(String, String, Priority, MessageListener)}. Kept messages count against the capacity
+     * of the sticky cache, the least recently used are evicted beyond it.
+     */
+    public void sticky(String destination) {
+        sticky(destination, false);
+    }
+
+    /**
+     * @param perAction keep the last message of every action instead of the last message of the destination
+     */
+    public void sticky(String destination, boolean perAction) {
+        Assert.hasLength(destination, "destination parameter can't be null or empty.");
+        Assert.isTrue(!DestinationTrie.isPattern(destination), "sticky destination can't be a pattern: " + destination);
+
+        stickyCache.addDestination(destination, perAction);
+    }
+
+    /**
+     * Stops keeping messages of the destination and drops the kept ones.
+     */
+    public void removeSticky(String destination) {
+        stickyCache.removeDestination(destination);
+    }
+
+    /**
+     * Drops the kept messages of the destination, it stays sticky.
+     */
+    public void removeStickyMessages(String destination) {
+        stickyCache.remove(destination);
+    }
+
+    /**
+     * @param capacity maximum number of messages kept for all sticky destinations together, 64 by default
+     */
+    public void setStickyCacheCapacity(int capacity) {
+        stickyCache.setCapacity(capacity);
     }
 
     public synchronized void unregisterListener(String[] destination, MessageListener listener) {
@@ -145,52 +809,102 @@ public class MessageBus {
         }
     }
 
+    /**
+     * Unregisters the listener from the destination for all actions.
+     */
     public synchronized void unregisterListener(String destination, MessageListener listener) {
-        Optional<? extends List<MessageListenerWithPriority>> messageListeners = getListenersForDestination(destination);
-        if (messageListeners.isPresent()) {
-            messageListeners.get().remove(new MessageListenerWithPriority(listener, Priority.NORMAL));
-        }
+        DestinationRoute route = routes.getRegistered(destination);
+        updateRoute(destination, route, route.without(listener));
     }
 
-    private synchronized Optional<? extends List<MessageListenerWithPriority>> getListenersForDestination(String destination) {
-        return Optional.fromNullable(listeners.get(destination));
+    public synchronized void unregisterListener(String destination, String action, MessageListener listener) {
+        DestinationRoute route = routes.getRegistered(destination);
+        updateRoute(destination, route, route.without(action != null ? action : Message.ACTION_ANY, listener));
     }
 
-    private static final class MessageListenerWithPriority implements MessageListener {
-        private final MessageListener listener;
-        private final Priority priority;
-
-        private MessageListenerWithPriority(@NotNull MessageListener listener, @NotNull Priority priority) {
-            this.listener = listener;
-            this.priority = priority;
+    private void updateRoute(String destination, DestinationRoute oldRoute, DestinationRoute newRoute) {
+        if (newRoute != oldRoute) {
+            routes.put(destination, newRoute);
         }
+    }
 
-        private MessageListener getMessageListener() {
-            return listener;
-        }
+    /**
+     * Subscriber classes found in the index are registered without any reflection.
+     */
+    public void addSubscriberIndex(SubscriberIndex subscriberIndex) {
+        Assert.notNull(subscriberIndex, "subscriberIndex parameter can't be null.");
 
-        private Priority getPriority() {
-            return priority;
-        }
+        subscriberMethodFinder.addSubscriberIndex(subscriberIndex);
+    }
 
-        public void receive(Message message) throws MessageListenerException {
-            getMessageListener().receive(message);
+    /**
+     * Logs a warning for every indexed subscriber class without a registered instance. Should be called once
+     * the application finished its start up registrations, classes annotated with {@link ManualSubscription}
+     * are skipped.
+     */
+    public synchronized void validateSubscriptions() {
+        for (SubscriberIndex subscriberIndex : subscriberMethodFinder.getSubscriberIndexes()) {
+            for (Class<?> subscriberClass : subscriberIndex.getSubscriberClassesRegisteredOnStart()) {
+                if (!registeredSubscriberCounts.containsKey(subscriberClass)) {
+                    LOGGER.warn("Subscriber {} is not registered, annotate it with @ManualSubscription "
+                            + "if it is registered later on purpose", subscriberClass.getName());
+                }
+            }
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (!(o instanceof MessageListenerWithPriority)) {
-                return false;
+    /**
+     * Registers every {@link Subscribe} annotated method of the subscriber for the destinations of its {@link To}s.
+     * Methods may take no parameters or a single {@link Message}. Sticky messages are delivered once all methods
+     * are registered.
+     */
+    public void register(Object subscriber) {
+        Assert.notNull(subscriber, "subscriber parameter can't be null.");
+
+        Class<?> subscriberClass = subscriber.getClass();
+        List<AddedListener> added = new ArrayList<>();
+        synchronized (this) {
+            for (SubscriberMethod subscriberMethod : subscriberMethodFinder.findSubscriberMethods(subscriberClass)) {
+                addListener(subscriberMethod.getDestination(),
+                        subscriberMethod.getAction(),
+                        subscriberMethod.getPriority(),
+                        new SubscriberMethodListener(subscriber, subscriberMethod),
+                        added);
             }
 
-            MessageListenerWithPriority ml = (MessageListenerWithPriority) o;
-            return listener.equals(ml.getMessageListener());
+            Integer count = registeredSubscriberCounts.get(subscriberClass);
+            registeredSubscriberCounts.put(subscriberClass, count == null ? 1 : count + 1);
+        }
+        replaySticky(added);
+    }
+
+    public synchronized void unregister(Object subscriber) {
+        Assert.notNull(subscriber, "subscriber parameter can't be null.");
+
+        Class<?> subscriberClass = subscriber.getClass();
+        for (SubscriberMethod subscriberMethod : subscriberMethodFinder.findSubscriberMethods(subscriberClass)) {
+            unregisterListener(subscriberMethod.getDestination(),
+                    subscriberMethod.getAction(),
+                    new SubscriberMethodListener(subscriber, subscriberMethod));
         }
 
-        @Override
-        public int hashCode() {
-            return listener.hashCode();
+        Integer count = registeredSubscriberCounts.get(subscriberClass);
+        if (count != null && count > 1) {
+            registeredSubscriberCounts.put(subscriberClass, count - 1);
+        } else {
+            registeredSubscriberCounts.remove(subscriberClass);
         }
     }
 
+    private static final class AddedListener {
+        private final String destination;
+        private final String action;
+        private final MessageListener listener;
+
+        private AddedListener(String destination, String action, MessageListener listener) {
+            this.destination = destination;
+            this.action = action;
+            this.listener = listener;
+        }
+    }
 }
@@ -0,0 +1,519 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of messages, written to and read from heap or direct {@link ByteBuffer}s in place. Integers
+ * are zigzag varints, strings are UTF-8 prefixed by their varint length or, if they are in the dictionary of the
+ * codec, just their varint index in it. The destination, action, priority and all extra data values
+ * {@link MessageData} has typed accessors for are supported, other values have to be {@link Serializable} and are
+ * written with Java serialization.
+ * <p>
+ * Decoding is lazy: primitives are read right away, strings, lists and serialized values are read from the buffer
+ * when they are first accessed. The buffer content must not change as long as the decoded message is in use.
+ * <p>
+ * Encoder and decoder have to use the same dictionary, strings may only be appended to it to stay compatible with
+ * messages encoded before.
+ */
+public final class MessageCodec {
+    private static final byte FORMAT_VERSION = 1;
+    private static final int ACTION_FLAG = 0x80;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_FALSE = 1;
+    private static final byte TYPE_TRUE = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_STRING = 7;
+    private static final byte TYPE_LIST = 8;
+    private static final byte TYPE_SERIALIZABLE = 9;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final String[] BUILT_IN_DICTIONARY = {
+            MessageDataConstants.NO_CONNECTIVITY,
+            MessageDataConstants.CORRELATION_ID
+    };
+
+    private final String[] dictionary;
+    private final Map<String, Integer> dictionaryIndexes;
+
+    private MessageCodec(String[] dictionary) {
+        this.dictionary = dictionary;
+        Map<String, Integer> indexes = new HashMap<>(dictionary.length * 2);
+        for (int i = 0; i < dictionary.length; i++) {
+            Assert.notNull(dictionary[i], "dictionary can't contain null.");
+            if (!indexes.containsKey(dictionary[i])) {
+                indexes.put(dictionary[i], i);
+            }
+        }
+        this.dictionaryIndexes = indexes;
+    }
+
+    /**
+     * Codec with the keys of {@link MessageDataConstants} in its dictionary.
+     */
+    public static MessageCodec create() {
+        return create(Collections.<String>emptyList());
+    }
+
+    /**
+     * @param dictionary destinations, actions, keys and frequent values written as an index, appended to the keys of
+     *                   {@link MessageDataConstants}
+     */
+    public static MessageCodec create(List<String> dictionary) {
+        Assert.notNull(dictionary, "dictionary parameter can't be null.");
+
+        String[] strings = new String[BUILT_IN_DICTIONARY.length + dictionary.size()];
+        System.arraycopy(BUILT_IN_DICTIONARY, 0, strings, 0, BUILT_IN_DICTIONARY.length);
+        for (int i = 0; i < dictionary.size(); i++) {
+            strings[BUILT_IN_DICTIONARY.length + i] = dictionary.get(i);
+        }
+        return new MessageCodec(strings);
+    }
+
+    /**
+     * Writes the message at the position of the buffer and moves the position after it.
+     *
+     * @throws java.nio.BufferOverflowException if the message doesn't fit, the buffer content after the position is
+     *                                          undefined then
+     * @throws IllegalArgumentException         if an extra data value can't be encoded
+     */
+    public void encode(@NotNull Message message, @NotNull ByteBuffer buffer) {
+        Assert.notNull(message, "message parameter can't be null.");
+        Assert.notNull(buffer, "buffer parameter can't be null.");
+
+        buffer.put(FORMAT_VERSION);
+        String action = message.getAction();
+        buffer.put((byte) (message.getPriority().ordinal() | (action != null ? ACTION_FLAG : 0)));
+        writeString(message.getDestination(), buffer);
+        if (action != null) {
+            writeString(action, buffer);
+        }
+
+        MessageData data = message.getExtraData();
+        writeVarint(data.size(), buffer);
+        for (int slot = 0, slotCount = data.slotCount(); slot < slotCount; slot++) {
+            String key = data.keyAt(slot);
+            if (key == null) {
+                continue;
+            }
+
+            writeString(key, buffer);
+            switch (data.typeAt(slot)) {
+                case MessageData.TYPE_BOOLEAN:
+                    buffer.put(data.primitiveAt(slot) != 0L ? TYPE_TRUE : TYPE_FALSE);
+                    break;
+                case MessageData.TYPE_INT:
+                    buffer.put(TYPE_INT);
+                    writeVarint(zigzag(data.primitiveAt(slot)), buffer);
+                    break;
+                case MessageData.TYPE_LONG:
+                    buffer.put(TYPE_LONG);
+                    writeVarint(zigzag(data.primitiveAt(slot)), buffer);
+                    break;
+                case MessageData.TYPE_FLOAT:
+                    buffer.put(TYPE_FLOAT);
+                    writeFixed((int) data.primitiveAt(slot) & 0xFFFFFFFFL, 4, buffer);
+                    break;
+                case MessageData.TYPE_DOUBLE:
+                    buffer.put(TYPE_DOUBLE);
+                    writeFixed(data.primitiveAt(slot), 8, buffer);
+                    break;
+                default:
+                    writeValue(data.objectAt(slot), buffer);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads a message lazily at the position of the buffer and moves the position after it. The returned message
+     * isn't pooled.
+     *
+     * @throws IllegalArgumentException if the buffer doesn't contain an encoded message at its position, as well if
+     *                                  a length or count in it exceeds the rest of the buffer
+     * @throws BufferUnderflowException if the message is cut off within a fixed size value
+     */
+    @NotNull
+    public Message decode(@NotNull ByteBuffer buffer) {
+        return decode(buffer, true);
+    }
+
+    /**
+     * @param lazy false to read all values right away, for buffers which are reused once the message is decoded
+     * @see #decode(ByteBuffer)
+     */
+    @NotNull
+    public Message decode(@NotNull ByteBuffer buffer, boolean lazy) {
+        Assert.notNull(buffer, "buffer parameter can't be null.");
+
+        Reader reader = new Reader(buffer, buffer.position());
+        byte version = reader.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown message format version: " + version);
+        }
+        int flags = reader.readByte() & 0xFF;
+        int priority = flags & ~ACTION_FLAG;
+        if (priority >= PRIORITIES.length) {
+            throw new IllegalArgumentException("Unknown message priority: " + priority);
+        }
+        String destination = readString(reader);
+        String action = (flags & ACTION_FLAG) != 0 ? readString(reader) : null;
+
+        int size = reader.checkLength(reader.readVarint());
+        MessageData data = new MessageData(size);
+        for (int i = 0; i < size; i++) {
+            String key = readString(reader);
+            byte type = reader.readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    data.putObjectValue(key, null);
+                    break;
+                case TYPE_FALSE:
+                case TYPE_TRUE:
+                    data.putBoolean(key, type == TYPE_TRUE);
+                    break;
+                case TYPE_INT:
+                    data.putInt(key, (int) unzigzag(reader.readVarint()));
+                    break;
+                case TYPE_LONG:
+                    data.putLong(key, unzigzag(reader.readVarint()));
+                    break;
+                case TYPE_FLOAT:
+                    data.putFloat(key, Float.intBitsToFloat((int) reader.readFixed(4)));
+                    break;
+                case TYPE_DOUBLE:
+                    data.putDouble(key, Double.longBitsToDouble(reader.readFixed(8)));
+                    break;
+                case TYPE_STRING:
+                case TYPE_LIST:
+                case TYPE_SERIALIZABLE:
+                    if (lazy) {
+                        data.putObjectValue(key, new EncodedValue(this, buffer, reader.position - 1));
+                        skipValue(type, reader);
+                    } else {
+                        data.putObjectValue(key, readValue(type, reader));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown extra data type: " + type);
+            }
+        }
+        buffer.position(reader.position);
+
+        Message message = Message.forDestinationAndAction(destination, action, data);
+        message.setPriority(PRIORITIES[priority]);
+        return message;
+    }
+
+    private void writeValue(Object value, ByteBuffer buffer) {
+        if (value == null) {
+            buffer.put(TYPE_NULL);
+        } else if (value instanceof String) {
+            buffer.put(TYPE_STRING);
+            writeString((String) value, buffer);
+        } else if (value instanceof Boolean) {
+            buffer.put((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Integer) {
+            buffer.put(TYPE_INT);
+            writeVarint(zigzag((Integer) value), buffer);
+        } else if (value instanceof Long) {
+            buffer.put(TYPE_LONG);
+            writeVarint(zigzag((Long) value), buffer);
+        } else if (value instanceof Float) {
+            buffer.put(TYPE_FLOAT);
+            writeFixed(Float.floatToIntBits((Float) value) & 0xFFFFFFFFL, 4, buffer);
+        } else if (value instanceof Double) {
+            buffer.put(TYPE_DOUBLE);
+            writeFixed(Double.doubleToLongBits((Double) value), 8, buffer);
+        } else if (value instanceof ArrayList) {
+            ArrayList<?> list = (ArrayList<?>) value;
+            buffer.put(TYPE_LIST);
+            int lengthPosition = buffer.position();
+            writeFixed(0L, 4, buffer);
+            writeVarint(list.size(), buffer);
+            for (int i = 0, size = list.size(); i < size; i++) {
+                writeValue(list.get(i), buffer);
+            }
+            int end = buffer.position();
+            buffer.position(lengthPosition);
+            writeFixed(end - lengthPosition - 4, 4, buffer);
+            buffer.position(end);
+        } else if (value instanceof Serializable) {
+            buffer.put(TYPE_SERIALIZABLE);
+            byte[] bytes = serialize(value);
+            writeFixed(bytes.length, 4, buffer);
+            buffer.put(bytes);
+        } else {
+            throw new IllegalArgumentException("Can't encode extra data value of " + value.getClass());
+        }
+    }
+
+    private Object readValue(byte type, Reader reader) {
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_INT:
+                return (int) unzigzag(reader.readVarint());
+            case TYPE_LONG:
+                return unzigzag(reader.readVarint());
+            case TYPE_FLOAT:
+                return Float.intBitsToFloat((int) reader.readFixed(4));
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(reader.readFixed(8));
+            case TYPE_STRING:
+                return readString(reader);
+            case TYPE_LIST:
+                reader.readFixed(4);
+                int size = reader.checkLength(reader.readVarint());
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(reader.readByte(), reader));
+                }
+                return list;
+            case TYPE_SERIALIZABLE:
+                byte[] bytes = new byte[reader.checkLength(reader.readFixed(4))];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = reader.readByte();
+                }
+                return deserialize(bytes);
+            default:
+                throw new IllegalArgumentException("Unknown extra data type: " + type);
+        }
+    }
+
+    private static void skipValue(byte type, Reader reader) {
+        if (type == TYPE_STRING) {
+            long header = reader.readVarint();
+            if ((header & 1L) == 0L) {
+                reader.position += reader.checkLength(header >>> 1);
+            }
+        } else {
+            reader.position += reader.checkLength(reader.readFixed(4));
+        }
+    }
+
+    private void writeString(String string, ByteBuffer buffer) {
+        Integer index = dictionaryIndexes.get(string);
+        if (index != null) {
+            writeVarint(((long) index << 1) | 1L, buffer);
+            return;
+        }
+
+        int length = string.length();
+        long utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+
+        writeVarint(utf8Length << 1, buffer);
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private String readString(Reader reader) {
+        long header = reader.readVarint();
+        if ((header & 1L) != 0L) {
+            long index = header >>> 1;
+            if (index >= dictionary.length) {
+                throw new IllegalArgumentException("Unknown dictionary string: " + index);
+            }
+            return dictionary[(int) index];
+        }
+
+        int utf8Length = reader.checkLength(header >>> 1);
+        char[] chars = new char[utf8Length];
+        int count = 0;
+        int end = reader.position + utf8Length;
+        while (reader.position < end) {
+            int b = reader.readByte();
+            if (b >= 0) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (reader.readByte() & 0x3F));
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((reader.readByte() & 0x3F) << 6)
+                        | (reader.readByte() & 0x3F));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((reader.readByte() & 0x3F) << 12)
+                        | ((reader.readByte() & 0x3F) << 6) | (reader.readByte() & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static void writeVarint(long value, ByteBuffer buffer) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static void writeFixed(long value, int byteCount, ByteBuffer buffer) {
+        for (int shift = (byteCount - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.put((byte) (value >>> shift));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    private static byte[] serialize(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't serialize extra data value of " + value.getClass(), e);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try {
+            return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can't deserialize extra data value", e);
+        }
+    }
+
+    /**
+     * Extra data value read from the buffer when it's first accessed. The value is kept in a volatile field, so
+     * readers on other threads see it fully constructed, concurrent first readers may both decode it.
+     */
+    static final class EncodedValue {
+        private final MessageCodec codec;
+        private final ByteBuffer buffer;
+        private final int position;
+        private volatile Object value;
+
+        private EncodedValue(MessageCodec codec, ByteBuffer buffer, int position) {
+            this.codec = codec;
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        Object decode() {
+            Object decoded = value;
+            if (decoded == null) {
+                Reader reader = new Reader(buffer, position);
+                decoded = codec.readValue(reader.readByte(), reader);
+                value = decoded;
+            }
+            return decoded;
+        }
+    }
+
+    /**
+     * Reads with absolute positions, so the position of the buffer is left alone and lazy values can be read from
+     * several threads.
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Reader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            if (position >= buffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+            return buffer.get(position++);
+        }
+
+        long readVarint() {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readFixed(int byteCount) {
+            long value = 0L;
+            for (int i = 0; i < byteCount; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        /**
+         * Every byte or element of a length or count read from the buffer takes at least a byte, so corrupt input
+         * is rejected before it allocates more than the buffer holds.
+         *
+         * @throws IllegalArgumentException if the length exceeds the bytes left in the buffer
+         */
+        int checkLength(long length) {
+            int remaining = buffer.limit() - position;
+            if (length < 0L || length > remaining) {
+                throw new IllegalArgumentException("Length " + length + " exceeds the " + remaining + " bytes left");
+            }
+            return (int) length;
+        }
+    }
+}
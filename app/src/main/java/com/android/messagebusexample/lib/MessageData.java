@@ -1,15 +1,55 @@
 package com.android.messagebusexample.lib;
 
+import com.android.messagebusexample.lib.utils.Assert;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Message payload stored in an open addressing table with parallel slots: primitives are kept unboxed in a long
+ * array next to a type tag, other values in an object array. The typed accessors never box, only the {@link Map}
+ * view does. A value is returned by a typed getter only if it was stored with the same type, otherwise the default
+ * value is returned.
+ * <p>
+ * The table is sized for the small fixed key sets messages usually carry, keys are compared by reference before
+ * equals so constant keys are found without comparing characters.
+ */
+public class MessageData extends AbstractMap<String, Object> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_BOOLEAN = 1;
+    static final byte TYPE_INT = 2;
+    static final byte TYPE_LONG = 3;
+    static final byte TYPE_FLOAT = 4;
+    static final byte TYPE_DOUBLE = 5;
+    static final byte TYPE_OBJECT = 6;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] keys;
+    private byte[] types;
+    private long[] primitives;
+    private Object[] objects;
+    private int size;
 
-public class MessageData extends HashMap<String, Object> {
     public MessageData() {
-        super();
+        this(DEFAULT_CAPACITY);
     }
 
+    /**
+     * @param capacity expected number of keys
+     */
     public MessageData(int capacity) {
-        super(capacity);
+        allocate(tableSizeFor(capacity));
     }
 
     public <T> T getObject(String key) {
@@ -25,7 +65,7 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public void putArrayList(String key, ArrayList<? extends Object> data) {
-        put(key, data);
+        putObjectValue(key, data);
     }
 
     public <T> ArrayList<T> getArrayList(String key) {
@@ -33,19 +73,12 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public <T> ArrayList<T> getArrayList(String key, ArrayList defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (ArrayList<T>) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        Object o = getObjectValue(key);
+        return o instanceof ArrayList ? (ArrayList<T>) o : defaultValue;
     }
 
     public void putBoolean(String key, boolean value) {
-        put(key, value);
+        putPrimitive(key, TYPE_BOOLEAN, value ? 1L : 0L);
     }
 
     public boolean getBoolean(String key) {
@@ -53,19 +86,12 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public boolean getBoolean(String key, boolean defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (Boolean) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        int slot = slotOf(key, TYPE_BOOLEAN);
+        return slot < 0 ? defaultValue : primitives[slot] != 0L;
     }
 
     public void putLong(String key, long val) {
-        put(key, val);
+        putPrimitive(key, TYPE_LONG, val);
     }
 
     public long getLong(String key) {
@@ -73,19 +99,12 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public long getLong(String key, long defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (Long) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        int slot = slotOf(key, TYPE_LONG);
+        return slot < 0 ? defaultValue : primitives[slot];
     }
 
     public void putInt(String key, int value) {
-        put(key, value);
+        putPrimitive(key, TYPE_INT, value);
     }
 
     public int getInt(String key) {
@@ -93,20 +112,13 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public int getInt(String key, int defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (Integer) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        int slot = slotOf(key, TYPE_INT);
+        return slot < 0 ? defaultValue : (int) primitives[slot];
     }
 
 
     public void putFloat(String key, float value) {
-        put(key, value);
+        putPrimitive(key, TYPE_FLOAT, Float.floatToRawIntBits(value));
     }
 
     public float getFloat(String key) {
@@ -114,19 +126,12 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public float getFloat(String key, float defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (Float) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        int slot = slotOf(key, TYPE_FLOAT);
+        return slot < 0 ? defaultValue : Float.intBitsToFloat((int) primitives[slot]);
     }
 
     public void putDouble(String key, double value) {
-        put(key, value);
+        putPrimitive(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
     }
 
     public double getDouble(String key) {
@@ -134,19 +139,12 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public double getDouble(String key, double defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
-        }
-        try {
-            return (Double) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
-        }
+        int slot = slotOf(key, TYPE_DOUBLE);
+        return slot < 0 ? defaultValue : Double.longBitsToDouble(primitives[slot]);
     }
 
     public void putString(String key, String value) {
-        put(key, value);
+        putObjectValue(key, value);
     }
 
     public String getString(String key) {
@@ -154,14 +152,347 @@ public class MessageData extends HashMap<String, Object> {
     }
 
     public String getString(String key, String defaultValue) {
-        Object o = get(key);
-        if (o == null) {
-            return defaultValue;
+        Object o = getObjectValue(key);
+        return o instanceof String ? (String) o : defaultValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    /**
+     * Boxes primitive values, prefer the typed getters.
+     */
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
         }
-        try {
-            return (String) o;
-        } catch (ClassCastException e) {
-            return defaultValue;
+
+        int slot = indexOf((String) key);
+        return slot < 0 ? null : valueAt(slot);
+    }
+
+    /**
+     * Unboxes primitive wrappers, so values put through the map interface are readable by the typed getters.
+     */
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = get(key);
+        if (value instanceof Integer) {
+            putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            putLong(key, (Long) value);
+        } else if (value instanceof Boolean) {
+            putBoolean(key, (Boolean) value);
+        } else if (value instanceof Double) {
+            putDouble(key, (Double) value);
+        } else if (value instanceof Float) {
+            putFloat(key, (Float) value);
+        } else {
+            putObjectValue(key, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        int slot = indexOf((String) key);
+        if (slot < 0) {
+            return null;
+        }
+
+        Object previous = valueAt(slot);
+        removeSlot(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = null;
+            types[i] = TYPE_NONE;
+            objects[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    private void putPrimitive(String key, byte type, long value) {
+        int slot = slotForPut(key);
+        types[slot] = type;
+        primitives[slot] = value;
+        objects[slot] = null;
+    }
+
+    /**
+     * Stores the value as an object, also used for the not yet decoded values of {@link MessageCodec}.
+     */
+    void putObjectValue(String key, Object value) {
+        int slot = slotForPut(key);
+        types[slot] = TYPE_OBJECT;
+        primitives[slot] = 0L;
+        objects[slot] = value;
+    }
+
+    private Object getObjectValue(String key) {
+        int slot = slotOf(key, TYPE_OBJECT);
+        return slot < 0 ? null : objectAt(slot);
+    }
+
+    int slotCount() {
+        return keys.length;
+    }
+
+    /**
+     * @return null for an empty slot
+     */
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    byte typeAt(int slot) {
+        return types[slot];
+    }
+
+    long primitiveAt(int slot) {
+        return primitives[slot];
+    }
+
+    /**
+     * Decodes a value left encoded by {@link MessageCodec} on first access. The decoded value stays in the encoded
+     * one, which publishes it safely to readers on other threads, e.g. of {@link Senders#parallel(java.util.concurrent.Executor)}.
+     */
+    Object objectAt(int slot) {
+        Object value = objects[slot];
+        if (value instanceof MessageCodec.EncodedValue) {
+            return ((MessageCodec.EncodedValue) value).decode();
+        }
+        return value;
+    }
+
+    private int slotOf(String key, byte type) {
+        if (key == null) {
+            return -1;
+        }
+
+        int slot = indexOf(key);
+        return slot >= 0 && types[slot] == type ? slot : -1;
+    }
+
+    private int indexOf(String key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            String slotKey = keys[slot];
+            if (slotKey == null) {
+                return -1;
+            }
+            if (slotKey == key || slotKey.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    private int slotForPut(String key) {
+        Assert.notNull(key, "key parameter can't be null.");
+
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            String slotKey = keys[slot];
+            if (slotKey == null) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    resize(keys.length * 2);
+                    return slotForPut(key);
+                }
+                keys[slot] = key;
+                size++;
+                return slot;
+            }
+            if (slotKey == key || slotKey.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Linear probing removal: shifts the following entries of the probe sequence back instead of leaving tombstones.
+     */
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            boolean reachableFromFree = free <= next ? (home <= free || home > next) : (home <= free && home > next);
+            if (reachableFromFree) {
+                keys[free] = keys[next];
+                types[free] = types[next];
+                primitives[free] = primitives[next];
+                objects[free] = objects[next];
+                free = next;
+            }
+        }
+
+        keys[free] = null;
+        types[free] = TYPE_NONE;
+        objects[free] = null;
+        size--;
+    }
+
+    private Object valueAt(int slot) {
+        long value = primitives[slot];
+        switch (types[slot]) {
+            case TYPE_BOOLEAN:
+                return value != 0L;
+            case TYPE_INT:
+                return (int) value;
+            case TYPE_LONG:
+                return value;
+            case TYPE_FLOAT:
+                return Float.intBitsToFloat((int) value);
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(value);
+            default:
+                return objectAt(slot);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // encoded values aren't serializable, a decoded copy is written in their place
+        Object[] decodedObjects = new Object[objects.length];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                decodedObjects[slot] = objectAt(slot);
+            }
+        }
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("keys", keys);
+        fields.put("types", types);
+        fields.put("primitives", primitives);
+        fields.put("objects", decodedObjects);
+        fields.put("size", size);
+        out.writeFields();
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        byte[] oldTypes = types;
+        long[] oldPrimitives = primitives;
+        Object[] oldObjects = objects;
+
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                types[slot] = oldTypes[i];
+                primitives[slot] = oldPrimitives[i];
+                objects[slot] = oldObjects[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        types = new byte[capacity];
+        primitives = new long[capacity];
+        objects = new Object[capacity];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MessageData.this.clear();
+        }
+
+        /**
+         * Iterates over a copy of the keys, so removing entries can't move not yet visited ones.
+         */
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            final String[] snapshot = new String[size];
+            int count = 0;
+            for (String key : keys) {
+                if (key != null) {
+                    snapshot[count++] = key;
+                }
+            }
+
+            return new Iterator<Entry<String, Object>>() {
+                private int index;
+                private String current;
+
+                @Override
+                public boolean hasNext() {
+                    return index < snapshot.length;
+                }
+
+                @Override
+                public Entry<String, Object> next() {
+                    if (index >= snapshot.length) {
+                        throw new NoSuchElementException();
+                    }
+                    current = snapshot[index++];
+                    return new DataEntry(current);
+                }
+
+                @Override
+                public void remove() {
+                    Assert.state(current != null, "next() has to be called before remove()");
+                    MessageData.this.remove(current);
+                    current = null;
+                }
+            };
+        }
+    }
+
+    private final class DataEntry extends SimpleEntry<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private DataEntry(String key) {
+            super(key, MessageData.this.get(key));
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            super.setValue(value);
+            return put(getKey(), value);
         }
     }
 }
@@ -4,6 +4,11 @@ public final class MessageDataConstants {
 
     public static final String NO_CONNECTIVITY = "noConnectivity";
 
+    /**
+     * Long id tying a reply to its request, see {@link MessageBus#request(Message, long, java.util.concurrent.TimeUnit)}.
+     */
+    public static final String CORRELATION_ID = "correlationId";
+
     private MessageDataConstants() {
         //Do nothing
     }
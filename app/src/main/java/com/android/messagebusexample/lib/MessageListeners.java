@@ -0,0 +1,265 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable snapshot of the listeners registered for a destination, sorted from high to low priority.
+ * Registration changes build a new snapshot instead of mutating this one, so it can be read without locking.
+ */
+final class MessageListeners implements Iterable<MessageListener> {
+    static final MessageListeners EMPTY = new MessageListeners(new MessageListener[0], new Priority[0]);
+
+    private static final BatchMessageListener[] NO_BATCH_LISTENERS = new BatchMessageListener[0];
+
+    private final MessageListener[] listeners;
+    private final Priority[] priorities;
+
+    // derived lazily for batch sends, racy initialization is fine as the results are immutable
+    private MessageListeners messageListenersOnly;
+    private BatchMessageListener[] batchListeners;
+    private Timed timed;
+
+    private MessageListeners(MessageListener[] listeners, Priority[] priorities) {
+        this.listeners = listeners;
+        this.priorities = priorities;
+    }
+
+    int size() {
+        return listeners.length;
+    }
+
+    boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    @NotNull
+    MessageListener get(int index) {
+        return listeners[index];
+    }
+
+    @NotNull
+    Priority getPriority(int index) {
+        return priorities[index];
+    }
+
+    /**
+     * @return the only listener of this snapshot or null if there are none or more than one
+     */
+    @Nullable
+    MessageListener single() {
+        return listeners.length == 1 ? listeners[0] : null;
+    }
+
+    /**
+     * @return listeners without the {@link BatchMessageListener}s
+     */
+    @NotNull
+    MessageListeners getMessageListenersOnly() {
+        if (messageListenersOnly == null) {
+            splitBatchListeners();
+        }
+        return messageListenersOnly;
+    }
+
+    /**
+     * @return {@link BatchMessageListener}s sorted from high to low priority
+     */
+    @NotNull
+    BatchMessageListener[] getBatchListeners() {
+        if (batchListeners == null) {
+            splitBatchListeners();
+        }
+        return batchListeners;
+    }
+
+    private void splitBatchListeners() {
+        int batchCount = 0;
+        for (MessageListener listener : listeners) {
+            if (listener instanceof BatchMessageListener) {
+                batchCount++;
+            }
+        }
+
+        if (batchCount == 0) {
+            batchListeners = NO_BATCH_LISTENERS;
+            messageListenersOnly = this;
+            return;
+        }
+
+        BatchMessageListener[] batch = new BatchMessageListener[batchCount];
+        MessageListeners others = EMPTY;
+        int batchIndex = 0;
+        for (int i = listeners.length - 1; i >= 0; i--) {
+            if (listeners[i] instanceof BatchMessageListener) {
+                batch[batchCount - ++batchIndex] = (BatchMessageListener) listeners[i];
+            } else {
+                others = others.with(listeners[i], priorities[i]);
+            }
+        }
+        batchListeners = batch;
+        messageListenersOnly = others;
+    }
+
+    /**
+     * @return snapshot of the listeners wrapped to record their execution times, see {@link BusMetrics#timed}
+     */
+    @NotNull
+    MessageListeners timed(@NotNull BusMetrics metrics) {
+        Timed current = timed;
+        if (current == null || current.metrics != metrics) {
+            MessageListener[] timedListeners = new MessageListener[listeners.length];
+            for (int i = 0; i < listeners.length; i++) {
+                timedListeners[i] = metrics.timed(listeners[i]);
+            }
+            current = new Timed(metrics, new MessageListeners(timedListeners, priorities));
+            timed = current;
+        }
+        return current.listeners;
+    }
+
+    boolean contains(@NotNull MessageListener listener) {
+        return indexOf(listener) >= 0;
+    }
+
+    /**
+     * Inserts the listener in front of the listeners with the same or lower priority.
+     */
+    @NotNull
+    MessageListeners with(@NotNull MessageListener listener, @NotNull Priority priority) {
+        int indexToInsert = 0;
+        while (indexToInsert < priorities.length) {
+            Priority listItemPriority = priorities[indexToInsert];
+            if (priority.isHigherThan(listItemPriority) || priority == listItemPriority) {
+                break;
+            }
+            indexToInsert += 1;
+        }
+
+        int size = listeners.length;
+        MessageListener[] newListeners = new MessageListener[size + 1];
+        Priority[] newPriorities = new Priority[size + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, indexToInsert);
+        System.arraycopy(priorities, 0, newPriorities, 0, indexToInsert);
+        newListeners[indexToInsert] = listener;
+        newPriorities[indexToInsert] = priority;
+        System.arraycopy(listeners, indexToInsert, newListeners, indexToInsert + 1, size - indexToInsert);
+        System.arraycopy(priorities, indexToInsert, newPriorities, indexToInsert + 1, size - indexToInsert);
+
+        return new MessageListeners(newListeners, newPriorities);
+    }
+
+    /**
+     * @return snapshot without the listener, {@link #EMPTY} if it was the last one or this if it wasn't registered
+     */
+    @NotNull
+    MessageListeners without(@NotNull MessageListener listener) {
+        int index = indexOf(listener);
+        if (index < 0) {
+            return this;
+        }
+
+        int size = listeners.length;
+        if (size == 1) {
+            return EMPTY;
+        }
+
+        MessageListener[] newListeners = new MessageListener[size - 1];
+        Priority[] newPriorities = new Priority[size - 1];
+        System.arraycopy(listeners, 0, newListeners, 0, index);
+        System.arraycopy(priorities, 0, newPriorities, 0, index);
+        System.arraycopy(listeners, index + 1, newListeners, index, size - index - 1);
+        System.arraycopy(priorities, index + 1, newPriorities, index, size - index - 1);
+
+        return new MessageListeners(newListeners, newPriorities);
+    }
+
+    /**
+     * Merges both snapshots keeping the high to low priority order, on equal priority listeners of this snapshot
+     * go first. Listeners contained in both are taken once.
+     */
+    @NotNull
+    MessageListeners mergedWith(@NotNull MessageListeners other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+
+        MessageListener[] mergedListeners = new MessageListener[listeners.length + other.listeners.length];
+        Priority[] mergedPriorities = new Priority[mergedListeners.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < listeners.length || j < other.listeners.length) {
+            if (j >= other.listeners.length
+                    || (i < listeners.length && !other.priorities[j].isHigherThan(priorities[i]))) {
+                mergedListeners[size] = listeners[i];
+                mergedPriorities[size++] = priorities[i++];
+            } else if (contains(other.listeners[j])) {
+                j++;
+            } else {
+                mergedListeners[size] = other.listeners[j];
+                mergedPriorities[size++] = other.priorities[j++];
+            }
+        }
+
+        if (size < mergedListeners.length) {
+            MessageListener[] trimmedListeners = new MessageListener[size];
+            Priority[] trimmedPriorities = new Priority[size];
+            System.arraycopy(mergedListeners, 0, trimmedListeners, 0, size);
+            System.arraycopy(mergedPriorities, 0, trimmedPriorities, 0, size);
+            return new MessageListeners(trimmedListeners, trimmedPriorities);
+        }
+        return new MessageListeners(mergedListeners, mergedPriorities);
+    }
+
+    private int indexOf(MessageListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public Iterator<MessageListener> iterator() {
+        return new Iterator<MessageListener>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < listeners.length;
+            }
+
+            @Override
+            public MessageListener next() {
+                if (index >= listeners.length) {
+                    throw new NoSuchElementException();
+                }
+                return listeners[index++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("MessageListeners is immutable");
+            }
+        };
+    }
+
+    private static final class Timed {
+        final BusMetrics metrics;
+        final MessageListeners listeners;
+
+        Timed(BusMetrics metrics, MessageListeners listeners) {
+            this.metrics = metrics;
+            this.listeners = listeners;
+        }
+    }
+}
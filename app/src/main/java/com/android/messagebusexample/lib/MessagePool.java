@@ -0,0 +1,151 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Recycles {@link Message}s together with their {@link MessageData}, see {@link MessageBus#obtainMessage(String)}.
+ * Every thread obtains messages from its own bounded stack without synchronization. A message released on another
+ * thread, e.g. after an async delivery, is pushed back to the stack of the thread which obtained it through a
+ * lock-free return list, which the owner takes over once its stack runs empty.
+ * <p>
+ * In debug mode the use of a recycled message and unbalanced {@link Message#retain()}/{@link Message#release()}
+ * calls throw {@link IllegalStateException}.
+ */
+public final class MessagePool {
+    private static final int DEFAULT_MAX_MESSAGES_PER_THREAD = 256;
+
+    private final int maxMessagesPerThread;
+    private final boolean debug;
+    private final ThreadLocal<LocalPool> localPools = new ThreadLocal<LocalPool>() {
+        @Override
+        protected LocalPool initialValue() {
+            return new LocalPool(Thread.currentThread());
+        }
+    };
+
+    private MessagePool(int maxMessagesPerThread, boolean debug) {
+        Assert.isTrue(maxMessagesPerThread > 0, "maxMessagesPerThread parameter must be positive.");
+
+        this.maxMessagesPerThread = maxMessagesPerThread;
+        this.debug = debug;
+    }
+
+    public static MessagePool create() {
+        return new MessagePool(DEFAULT_MAX_MESSAGES_PER_THREAD, false);
+    }
+
+    public static MessagePool create(int maxMessagesPerThread) {
+        return new MessagePool(maxMessagesPerThread, false);
+    }
+
+    public static MessagePool debug() {
+        return new MessagePool(DEFAULT_MAX_MESSAGES_PER_THREAD, true);
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * @return message with empty extra data, holding a single reference owned by the caller
+     */
+    @NotNull
+    public Message obtain(@NotNull String destination, @Nullable String action) {
+        LocalPool localPool = localPools.get();
+        Message message = localPool.pop();
+        if (message == null) {
+            message = new Message(this);
+        }
+
+        message.home = localPool;
+        message.reuse(destination, action);
+        return message;
+    }
+
+    void recycle(@NotNull Message message) {
+        message.markRecycled();
+
+        LocalPool home = message.home;
+        if (home == null) {
+            return;
+        }
+
+        if (home.owner == Thread.currentThread()) {
+            home.push(message, maxMessagesPerThread);
+        } else {
+            home.pushReturned(message, maxMessagesPerThread);
+        }
+    }
+
+    static final class LocalPool {
+        private final Thread owner;
+        private final AtomicReference<Message> returned = new AtomicReference<>();
+        private final AtomicInteger returnedCount = new AtomicInteger();
+        private Message head;
+        private int count;
+
+        private LocalPool(Thread owner) {
+            this.owner = owner;
+        }
+
+        private Message pop() {
+            if (head == null) {
+                takeReturned();
+            }
+
+            Message message = head;
+            if (message != null) {
+                head = message.next;
+                message.next = null;
+                count--;
+            }
+            return message;
+        }
+
+        private void push(Message message, int maxMessages) {
+            if (count < maxMessages) {
+                message.next = head;
+                head = message;
+                count++;
+            }
+        }
+
+        /**
+         * Called by other threads. Only the owner takes returned messages and it takes the whole list at once,
+         * so the push can't suffer from ABA.
+         */
+        private void pushReturned(Message message, int maxMessages) {
+            if (returnedCount.incrementAndGet() > maxMessages) {
+                returnedCount.decrementAndGet();
+                return;
+            }
+
+            Message top;
+            do {
+                top = returned.get();
+                message.next = top;
+            } while (!returned.compareAndSet(top, message));
+        }
+
+        private void takeReturned() {
+            Message message = returned.getAndSet(null);
+            if (message == null) {
+                return;
+            }
+
+            int taken = 0;
+            for (Message m = message; m != null; m = m.next) {
+                taken++;
+            }
+            returnedCount.addAndGet(-taken);
+            head = message;
+            count = taken;
+        }
+    }
+}
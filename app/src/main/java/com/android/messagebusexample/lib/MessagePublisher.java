@@ -0,0 +1,198 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams publisher of the messages sent to a destination. Every subscriber is registered as a listener of
+ * its own and buffers up to {@code bufferSize} messages, which are emitted on the executor as the subscriber
+ * requests them. A subscriber falling behind is handled by the {@link OverflowPolicy}, so neither the sender nor
+ * other listeners wait for it.
+ * <p>
+ * Pooled messages are released after {@link Subscriber#onNext(Object)} returns, like with a listener.
+ */
+final class MessagePublisher implements Publisher<Message> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessagePublisher.class);
+
+    private final MessageBus messageBus;
+    private final String destination;
+    private final Executor executor;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+
+    MessagePublisher(MessageBus messageBus, String destination, Executor executor, int bufferSize,
+                     OverflowPolicy overflowPolicy) {
+        Assert.notNull(executor, "executor parameter can't be null.");
+        Assert.isTrue(bufferSize > 0, "bufferSize parameter must be positive.");
+        Assert.isTrue(overflowPolicy == OverflowPolicy.DROP_NEWEST || overflowPolicy == OverflowPolicy.DROP_OLDEST
+                || overflowPolicy == OverflowPolicy.REJECT, "overflowPolicy must be DROP_NEWEST, DROP_OLDEST or REJECT.");
+
+        this.messageBus = messageBus;
+        this.destination = destination;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber parameter can't be null.");
+        }
+
+        MessageSubscription subscription = new MessageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        messageBus.registerListener(destination, subscription);
+        if (subscription.cancelled) {
+            // cancelled or failed before the listener was registered, so terminating couldn't unregister it
+            messageBus.unregisterListener(destination, subscription);
+        }
+    }
+
+    private final class MessageSubscription implements Subscription, MessageListener, Runnable {
+        private final Subscriber<? super Message> subscriber;
+        private final ArrayDeque<Message> buffer = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        private MessageSubscription(Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void receive(Message message) {
+            if (cancelled || error != null) {
+                return;
+            }
+
+            Message dropped = null;
+            message.retain();
+            synchronized (buffer) {
+                if (cancelled) {
+                    dropped = message;
+                } else if (buffer.size() < bufferSize) {
+                    buffer.addLast(message);
+                } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    dropped = buffer.pollFirst();
+                    buffer.addLast(message);
+                } else {
+                    dropped = message;
+                    if (overflowPolicy == OverflowPolicy.REJECT) {
+                        error = new MessageBusException("Subscriber fell behind by " + bufferSize + " messages on " + destination);
+                    }
+                }
+            }
+
+            if (dropped != null) {
+                if (!cancelled) {
+                    LOGGER.debug("Dropped message for a slow subscriber: {}", dropped);
+                }
+                dropped.release();
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                error = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0L ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Emits on a single thread at a time, schedule() calls made meanwhile are picked up before it returns.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (cancelled || error != null) {
+                    terminate();
+                    return;
+                }
+
+                long emitted = 0L;
+                long demand = requested.get();
+                while (emitted < demand && !cancelled) {
+                    Message message;
+                    synchronized (buffer) {
+                        message = buffer.pollFirst();
+                    }
+                    if (message == null) {
+                        break;
+                    }
+                    emit(message);
+                    emitted++;
+                }
+                if (emitted > 0L && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit(Message message) {
+            try {
+                subscriber.onNext(message);
+            } catch (RuntimeException e) {
+                LOGGER.error("Subscriber failed on message: {}", message, e);
+                cancelled = true;
+            } finally {
+                message.release();
+            }
+        }
+
+        /**
+         * Leaves wip above zero, so no emission is scheduled afterwards.
+         */
+        private void terminate() {
+            boolean failed = !cancelled;
+            messageBus.unregisterListener(destination, this);
+            synchronized (buffer) {
+                cancelled = true;
+                for (Message message : buffer) {
+                    message.release();
+                }
+                buffer.clear();
+            }
+
+            if (failed) {
+                subscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Metrics of a bus at one point in time, see {@link MessageBus#enableMetrics()}. Counters are totals since the metrics
+ * were enabled, an exporter derives rates from the difference of two snapshots. Counters are read while the bus keeps
+ * counting, so the values of one snapshot may be off by the operations running while it was taken.
+ */
+public final class MetricsSnapshot {
+    static final MetricsSnapshot EMPTY = new MetricsSnapshot(0L, Collections.<String, Destination>emptyMap(),
+            Collections.<MessageListener, Histogram>emptyMap());
+
+    private final long takenAtMillis;
+    private final Map<String, Destination> destinations;
+    private final Map<MessageListener, Histogram> listenerTimes;
+
+    MetricsSnapshot(long takenAtMillis, Map<String, Destination> destinations,
+                    Map<MessageListener, Histogram> listenerTimes) {
+        this.takenAtMillis = takenAtMillis;
+        this.destinations = Collections.unmodifiableMap(destinations);
+        this.listenerTimes = Collections.unmodifiableMap(listenerTimes);
+    }
+
+    /**
+     * @return 0 if metrics are disabled
+     */
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    /**
+     * @return metrics by destination messages were sent to
+     */
+    @NotNull
+    public Map<String, Destination> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * @return execution times of the listeners in nanoseconds, for batch listeners per batch
+     */
+    @NotNull
+    public Map<MessageListener, Histogram> getListenerTimes() {
+        return listenerTimes;
+    }
+
+    /**
+     * @return messages sent async and not delivered yet, over all destinations
+     */
+    public long getQueueDepth() {
+        long depth = 0L;
+        for (Destination destination : destinations.values()) {
+            depth += destination.queueDepth;
+        }
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{destinations=" + destinations.values() + ", listeners=" + listenerTimes.size() + '}';
+    }
+
+    public static final class Destination {
+        private final String name;
+        private final long messages;
+        private final long deliveries;
+        private final long failures;
+        private final long unrouted;
+        private final long queueDepth;
+        private final Histogram lag;
+
+        Destination(String name, long messages, long deliveries, long failures, long unrouted, long queueDepth,
+                    Histogram lag) {
+            this.name = name;
+            this.messages = messages;
+            this.deliveries = deliveries;
+            this.failures = failures;
+            this.unrouted = unrouted;
+            this.queueDepth = queueDepth;
+            this.lag = lag;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return messages handed to the listeners of the destination, sync or async
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return messages times the listeners they were sent to
+         */
+        public long getDeliveries() {
+            return deliveries;
+        }
+
+        /**
+         * @return listener calls which threw
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return messages dropped as the destination had no listeners
+         */
+        public long getUnrouted() {
+            return unrouted;
+        }
+
+        /**
+         * @return messages sent async and not delivered yet, approximate unless the bus uses a
+         * {@link BoundedDispatcher}
+         */
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return nanoseconds async messages waited between the send and the start of their delivery
+         */
+        @NotNull
+        public Histogram getLag() {
+            return lag;
+        }
+
+        @Override
+        public String toString() {
+            return "Destination{name='" + name + '\'' +
+                    ", messages=" + messages +
+                    ", deliveries=" + deliveries +
+                    ", failures=" + failures +
+                    ", unrouted=" + unrouted +
+                    ", queueDepth=" + queueDepth +
+                    ", lag=" + lag +
+                    '}';
+        }
+    }
+
+    /**
+     * Counts of durations in nanoseconds by log-linear bucket, see {@link #getBucketUpperBound(int)}.
+     */
+    public static final class Histogram {
+        private final long[] counts;
+        private final long sum;
+        private final long count;
+
+        Histogram(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0L;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return count == 0L ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile 0 to 100
+         * @return upper bound of the bucket containing the percentile, 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0L) {
+                    return LatencyHistogram.upperBoundOf(i);
+                }
+            }
+            return 0L;
+        }
+
+        public int getBucketCount() {
+            return counts.length;
+        }
+
+        /**
+         * @return highest duration counted in the bucket, buckets are at most 12.5% wide relative to their values
+         */
+        public long getBucketUpperBound(int bucket) {
+            return LatencyHistogram.upperBoundOf(bucket);
+        }
+
+        public long getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        @Override
+        public String toString() {
+            return "Histogram{count=" + count +
+                    ", mean=" + (long) getMean() +
+                    ", p50=" + getPercentile(50.0) +
+                    ", p99=" + getPercentile(99.0) +
+                    '}';
+        }
+    }
+}
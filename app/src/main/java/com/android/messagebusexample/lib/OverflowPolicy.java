@@ -0,0 +1,28 @@
+package com.android.messagebusexample.lib;
+
+/**
+ * What a bounded dispatcher does with a message sent while its queue is full, see
+ * {@link AsyncDispatchers#bounded(int, int, OverflowPolicy)}.
+ */
+public enum OverflowPolicy {
+    /**
+     * The sender waits until there is room in the queue.
+     */
+    BLOCK,
+    /**
+     * The sender waits for room up to the timeout of the dispatcher, the message is dropped if there is none by then.
+     */
+    BLOCK_WITH_TIMEOUT,
+    /**
+     * The sent message is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued message is dropped to make room for the sent one.
+     */
+    DROP_OLDEST,
+    /**
+     * The sent message is rejected, the sender learns about it through the {@link DispatchResult}.
+     */
+    REJECT
+}
@@ -0,0 +1,164 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sender calling the listeners of a priority in parallel and the priorities one after another, from high to low.
+ * Returns once all listeners received the message, so the message stays valid for them like with the sequential
+ * senders.
+ * <p>
+ * The calling thread takes part in the fan-out: listeners are claimed one by one by the caller and the executor
+ * tasks, so the send completes even if the executor is saturated or the caller is one of its threads. Priorities
+ * with fewer listeners than {@code minParallelListeners} are called inline.
+ */
+final class ParallelSender implements Sender {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelSender.class);
+
+    private final Executor executor;
+    private final int minParallelListeners;
+    private final boolean continueOnFailure;
+
+    ParallelSender(Executor executor, int minParallelListeners, boolean continueOnFailure) {
+        Assert.notNull(executor, "executor parameter can't be null.");
+        Assert.isTrue(minParallelListeners > 1, "minParallelListeners parameter must be greater than 1.");
+
+        this.executor = executor;
+        this.minParallelListeners = minParallelListeners;
+        this.continueOnFailure = continueOnFailure;
+    }
+
+    @Override
+    public void send(Message message, Iterable<? extends MessageListener> to) throws MessageListenerException {
+        if (!(to instanceof MessageListeners)) {
+            List<MessageListener> listeners = new ArrayList<>();
+            for (MessageListener listener : to) {
+                listeners.add(listener);
+            }
+            sendToTier(message, listeners.toArray(new MessageListener[0]));
+            return;
+        }
+
+        MessageListeners listeners = (MessageListeners) to;
+        int size = listeners.size();
+        for (int tierStart = 0; tierStart < size; ) {
+            int tierEnd = tierStart + 1;
+            while (tierEnd < size && listeners.getPriority(tierEnd) == listeners.getPriority(tierStart)) {
+                tierEnd++;
+            }
+
+            if (tierEnd - tierStart < minParallelListeners) {
+                for (int i = tierStart; i < tierEnd; i++) {
+                    receive(listeners.get(i), message);
+                }
+            } else {
+                MessageListener[] tier = new MessageListener[tierEnd - tierStart];
+                for (int i = tierStart; i < tierEnd; i++) {
+                    tier[i - tierStart] = listeners.get(i);
+                }
+                sendToTier(message, tier);
+            }
+            tierStart = tierEnd;
+        }
+    }
+
+    private void sendToTier(Message message, MessageListener[] tier) throws MessageListenerException {
+        if (tier.length < minParallelListeners) {
+            for (MessageListener listener : tier) {
+                receive(listener, message);
+            }
+            return;
+        }
+
+        FanOut fanOut = new FanOut(message, tier);
+        for (int i = 1; i < tier.length; i++) {
+            try {
+                executor.execute(fanOut);
+            } catch (RejectedExecutionException e) {
+                // the caller claims the remaining listeners itself
+                break;
+            }
+        }
+        fanOut.run();
+        fanOut.await();
+    }
+
+    private void receive(MessageListener listener, Message message) throws MessageListenerException {
+        if (!continueOnFailure) {
+            listener.receive(message);
+            return;
+        }
+
+        try {
+            listener.receive(message);
+        } catch (MessageListenerException | RuntimeException e) {
+            LOGGER.error("Received exception while sending message", e);
+        }
+    }
+
+    private final class FanOut implements Runnable {
+        private final Message message;
+        private final MessageListener[] listeners;
+        private final AtomicInteger nextListener = new AtomicInteger();
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private FanOut(Message message, MessageListener[] listeners) {
+            this.message = message;
+            this.listeners = listeners;
+            this.done = new CountDownLatch(listeners.length);
+        }
+
+        @Override
+        public void run() {
+            for (int i = nextListener.getAndIncrement(); i < listeners.length; i = nextListener.getAndIncrement()) {
+                try {
+                    if (failure.get() == null) {
+                        receive(listeners[i], message);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Waits for all listeners even if interrupted, the message must not be released while they still use it.
+         */
+        private void await() throws MessageListenerException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            Throwable t = failure.get();
+            if (t instanceof MessageListenerException) {
+                throw (MessageListenerException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+}
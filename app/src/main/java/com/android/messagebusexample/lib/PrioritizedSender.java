@@ -0,0 +1,16 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sender of a message sent async with a priority of its own, see {@link MessageBus#sendMessageAsync(Message, Priority)}.
+ */
+final class PrioritizedSender extends DelegatingSender {
+    @NotNull
+    final Priority priority;
+
+    PrioritizedSender(@NotNull Sender sender, @NotNull Priority priority) {
+        super(sender);
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,215 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatcher keeping a FIFO queue per {@link Priority} and delivering the higher classes first.
+ * <p>
+ * To keep low priority messages from starving, a message competes as if it was sent one aging interval later per
+ * class below {@link Priority#HIGH}, so messages waiting long enough overtake newer messages of higher classes.
+ * {@link Priority#HIGHER} is meant for control messages and always goes first: such a message waits at most for the
+ * deliveries the workers are busy with, however deep the backlog of the other classes is.
+ */
+final class PriorityDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriorityDispatcher.class);
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Entry>[] queues = new ArrayDeque[PRIORITIES.length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int workerCount;
+    private final long agingNanos;
+    private final ThreadFactory threadFactory;
+
+    private int size;
+    private volatile boolean running;
+    private Delivery delivery;
+
+    PriorityDispatcher(int workerCount, long agingNanos, ThreadFactory threadFactory) {
+        Assert.isTrue(workerCount > 0, "workerCount parameter must be positive.");
+        Assert.isTrue(agingNanos > 0, "aging parameter must be positive.");
+        Assert.notNull(threadFactory, "threadFactory parameter can't be null.");
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.workerCount = workerCount;
+        this.agingNanos = agingNanos;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start(Delivery delivery) {
+        Assert.state(this.delivery == null, "Dispatcher is already started.");
+
+        this.delivery = delivery;
+        this.running = true;
+        for (int i = 0; i < workerCount; i++) {
+            threadFactory.newThread(new Worker()).start();
+        }
+    }
+
+    /**
+     * The message is queued with the priority it was sent with, see {@link MessageBus#sendMessageAsync(Message,
+     * Priority)}, and otherwise with its own one.
+     */
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        Priority priority = DelegatingSender.sendPriorityOf(sender);
+        enqueue(new Entry(message, null, sender, priority != null ? priority : message.getPriority()));
+    }
+
+    /**
+     * The batch is queued with the priority it was sent with or the highest priority of its messages.
+     */
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        Priority priority = DelegatingSender.sendPriorityOf(sender);
+        if (priority != null) {
+            enqueue(new Entry(null, messages, sender, priority));
+            return;
+        }
+
+        priority = Priority.VERIFICATION;
+        for (Message message : messages) {
+            if (message.getPriority().isHigherThan(priority)) {
+                priority = message.getPriority();
+            }
+        }
+        enqueue(new Entry(null, messages, sender, priority));
+    }
+
+    private void enqueue(Entry entry) {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("Dispatcher is not running");
+            }
+
+            entry.enqueuedAt = System.nanoTime();
+            queues[entry.priority.ordinal()].addLast(entry);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return next entry or null once the dispatcher is shut down and drained
+     */
+    private Entry take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (!running) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+
+            size--;
+            return queues[nextQueue()].pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The highest class goes first, the heads of the other queues are ranked by their enqueue time plus one aging
+     * interval per class below the highest. A message waiting longer than the aging interval thus overtakes newer
+     * messages of the class above, and as the rank of a waiting message never changes, every message is eventually
+     * delivered. Only the heads need to be compared, they have the lowest rank within their class.
+     */
+    private int nextQueue() {
+        if (!queues[0].isEmpty()) {
+            return 0;
+        }
+
+        int next = -1;
+        long nextRank = 0L;
+        for (int i = 1; i < queues.length; i++) {
+            Entry head = queues[i].peekFirst();
+            if (head == null) {
+                continue;
+            }
+
+            long rank = head.enqueuedAt + i * agingNanos;
+            if (next < 0 || rank - nextRank < 0) {
+                next = i;
+                nextRank = rank;
+            }
+        }
+        return next;
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (entry == null) {
+                    return;
+                }
+                deliver(entry);
+            }
+        }
+
+        private void deliver(Entry entry) {
+            try {
+                if (entry.batch != null) {
+                    delivery.deliverAll(entry.batch, entry.sender);
+                } else {
+                    delivery.deliver(entry.message, entry.sender);
+                }
+            } catch (Throwable e) {
+                // an Error would otherwise end the worker
+                LOGGER.error("Failed to deliver message: {}", entry.message != null ? entry.message : entry.batch, e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final List<Message> batch;
+        private final Sender sender;
+        private final Priority priority;
+        private long enqueuedAt;
+
+        private Entry(Message message, List<Message> batch, Sender sender, Priority priority) {
+            this.message = message;
+            this.batch = batch;
+            this.sender = sender;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.android.messagebusexample.lib;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pending requests by correlation id. Replies complete the future of their request directly, without being routed
+ * through the listener registry. The timeouts of the requests are scheduled on the timing wheel of the bus, a reply
+ * removes its timeout from the wheel right away.
+ */
+final class RequestTable {
+    private final ConcurrentHashMap<Long, SettableFuture<Message>> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final TimingWheel timingWheel;
+
+    RequestTable(@NotNull TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Tags the request with a new correlation id.
+     *
+     * @return future completed by {@link #complete(Message, Message)}, failed with a {@link TimeoutException} after
+     * the timeout
+     */
+    @NotNull
+    ListenableFuture<Message> register(@NotNull Message request, long timeout, @NotNull TimeUnit unit) {
+        final long correlationId = nextCorrelationId.incrementAndGet();
+        final String destination = request.getDestination();
+        request.getExtraData().putLong(MessageDataConstants.CORRELATION_ID, correlationId);
+
+        final SettableFuture<Message> future = SettableFuture.create();
+        pendingRequests.put(correlationId, future);
+
+        final TimingWheel.Timeout timeoutTask = new TimingWheel.Timeout() {
+            @Override
+            void expire() {
+                future.setException(new TimeoutException("No reply from " + destination + " within " + timeout + " "
+                        + unit));
+            }
+        };
+        timingWheel.schedule(timeoutTask, timeout, unit);
+        future.addListener(() -> {
+            pendingRequests.remove(correlationId);
+            timeoutTask.cancel();
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * @return false if the request timed out or was cancelled already or isn't a request at all
+     */
+    boolean complete(@NotNull Message request, @NotNull Message reply) {
+        long correlationId = request.getExtraData().getLong(MessageDataConstants.CORRELATION_ID, 0L);
+        SettableFuture<Message> future = correlationId == 0L ? null : pendingRequests.get(correlationId);
+        if (future == null) {
+            return false;
+        }
+
+        reply.getExtraData().putLong(MessageDataConstants.CORRELATION_ID, correlationId);
+        return future.set(reply);
+    }
+
+    void fail(@NotNull Message request, @NotNull Throwable cause) {
+        long correlationId = request.getExtraData().getLong(MessageDataConstants.CORRELATION_ID, 0L);
+        SettableFuture<Message> future = pendingRequests.get(correlationId);
+        if (future != null) {
+            future.setException(cause);
+        }
+    }
+}
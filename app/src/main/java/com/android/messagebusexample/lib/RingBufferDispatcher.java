@@ -0,0 +1,255 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-producer, multi-consumer dispatcher on a preallocated ring buffer.
+ * <p>
+ * Producers claim a sequence number, write the message into its slot and mark the slot published with the lap of
+ * the sequence. Consumers claim sequences from a shared work sequence, once a claimed slot is published a consumer
+ * extends its claim over all following published slots up to {@link #MAX_BATCH_SIZE} and drains them in one go.
+ * Producers wait for a free slot when the slowest consumer is a whole buffer behind. Nothing is allocated per message,
+ * a batch of messages takes a single slot.
+ * <p>
+ * A listener sending async from a consumer thread can't wait for a slot its own consumer has to free, such a message
+ * is delivered right away on the consumer thread instead, ahead of the messages already in the buffer.
+ */
+final class RingBufferDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RingBufferDispatcher.class);
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final int bufferSize;
+    private final int mask;
+    private final int indexShift;
+    private final Message[] messages;
+    private final Sender[] senders;
+    private final Object[] batches;
+    private final AtomicIntegerArray publishedLaps;
+    private final Sequence cursor = new Sequence();
+    private final Sequence workSequence = new Sequence();
+    private final Sequence[] consumerSequences;
+    private final Thread[] consumerThreads;
+    private final WaitStrategy waitStrategy;
+    private final ThreadFactory threadFactory;
+
+    private volatile boolean running;
+    private Delivery delivery;
+
+    RingBufferDispatcher(int bufferSize, int consumerCount, WaitStrategy waitStrategy, ThreadFactory threadFactory) {
+        Assert.isTrue(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "bufferSize parameter must be a power of 2.");
+        Assert.isTrue(consumerCount > 0, "consumerCount parameter must be positive.");
+        Assert.notNull(waitStrategy, "waitStrategy parameter can't be null.");
+        Assert.notNull(threadFactory, "threadFactory parameter can't be null.");
+
+        this.bufferSize = bufferSize;
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.messages = new Message[bufferSize];
+        this.senders = new Sender[bufferSize];
+        this.batches = new Object[bufferSize];
+        this.publishedLaps = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            publishedLaps.set(i, -1);
+        }
+        this.consumerSequences = new Sequence[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            consumerSequences[i] = new Sequence();
+        }
+        this.consumerThreads = new Thread[consumerCount];
+        this.waitStrategy = waitStrategy;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start(Delivery delivery) {
+        Assert.state(this.delivery == null, "Dispatcher is already started.");
+
+        this.delivery = delivery;
+        for (int i = 0; i < consumerThreads.length; i++) {
+            consumerThreads[i] = threadFactory.newThread(new Consumer(consumerSequences[i]));
+        }
+        this.running = true;
+        for (Thread consumerThread : consumerThreads) {
+            consumerThread.start();
+        }
+    }
+
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        publish(message, null, sender);
+    }
+
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        publish(null, messages, sender);
+    }
+
+    private void publish(Message message, List<Message> batch, Sender sender) {
+        if (!running) {
+            throw new RejectedExecutionException("Dispatcher is not running");
+        }
+
+        long sequence;
+        Sequence consumerSequence = consumerSequenceOf(Thread.currentThread());
+        if (consumerSequence == null) {
+            sequence = cursor.incrementAndGet();
+        } else {
+            sequence = claimOnConsumer(consumerSequence);
+            if (sequence < 0L) {
+                deliver(message, batch, sender);
+                return;
+            }
+        }
+
+        long wrapPoint = sequence - bufferSize;
+        for (int counter = 0; wrapPoint > minimumConsumerSequence(); ) {
+            counter = waitStrategy.idle(counter);
+        }
+
+        int index = (int) sequence & mask;
+        messages[index] = message;
+        batches[index] = batch;
+        senders[index] = sender;
+        publishedLaps.lazySet(index, (int) (sequence >>> indexShift));
+    }
+
+    /**
+     * @return sequence of the consumer running on the thread, null for other threads
+     */
+    private Sequence consumerSequenceOf(Thread thread) {
+        for (int i = 0; i < consumerThreads.length; i++) {
+            if (consumerThreads[i] == thread) {
+                return consumerSequences[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims a sequence only if its slot doesn't wait for the consumer itself, which would never free it.
+     *
+     * @return -1 if the buffer is full up to the slots of the consumer
+     */
+    private long claimOnConsumer(Sequence consumerSequence) {
+        while (true) {
+            long current = cursor.get();
+            if (current + 1L - bufferSize > consumerSequence.get()) {
+                return -1L;
+            }
+            if (cursor.compareAndSet(current, current + 1L)) {
+                return current + 1L;
+            }
+        }
+    }
+
+    private void deliver(Message message, List<Message> batch, Sender sender) {
+        try {
+            if (batch != null) {
+                delivery.deliverAll(batch, sender);
+            } else {
+                delivery.deliver(message, sender);
+            }
+        } catch (Throwable e) {
+            // an Error would otherwise end the consumer and stall the buffer
+            LOGGER.error("Failed to deliver message: {}", message != null ? message : batch, e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+    }
+
+    private boolean isPublished(long sequence) {
+        return publishedLaps.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    private long minimumConsumerSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (Sequence consumerSequence : consumerSequences) {
+            minimum = Math.min(minimum, consumerSequence.get());
+        }
+        return minimum;
+    }
+
+    private final class Consumer implements Runnable {
+        private final Sequence sequence;
+
+        private Consumer(Sequence sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long next;
+                do {
+                    next = workSequence.get() + 1L;
+                    sequence.set(next - 1L);
+                } while (!workSequence.compareAndSet(next - 1L, next));
+
+                if (!awaitPublished(next)) {
+                    return;
+                }
+
+                long last = next;
+                while (last - next + 1 < MAX_BATCH_SIZE && isPublished(last + 1) && workSequence.compareAndSet(last, last + 1)) {
+                    last++;
+                }
+
+                for (long s = next; s <= last; s++) {
+                    deliver(s);
+                }
+            }
+        }
+
+        /**
+         * @return false if the dispatcher was shut down and the sequence will never be published
+         */
+        private boolean awaitPublished(long next) {
+            for (int counter = 0; !isPublished(next); ) {
+                if (!running && cursor.get() < next) {
+                    return false;
+                }
+                counter = waitStrategy.idle(counter);
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(long s) {
+            int index = (int) s & mask;
+            Message message = messages[index];
+            List<Message> batch = (List<Message>) batches[index];
+            Sender sender = senders[index];
+            messages[index] = null;
+            batches[index] = null;
+            senders[index] = null;
+
+            RingBufferDispatcher.this.deliver(message, batch, sender);
+        }
+    }
+
+    /**
+     * Sequence padded against false sharing with the neighbouring sequences.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        private Sequence() {
+            super(-1L);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes of exact destinations and destination patterns. Lookups never block: exact destinations are a single map
+ * lookup as long as no pattern is registered, otherwise the route resolved for a destination is cached until the
+ * registrations change. {@link Topic}s get their resolved route pushed on every change instead.
+ * <p>
+ * Changes and topic creation must be serialized by the caller.
+ */
+final class RouteTable {
+    private static final int MAX_RESOLVED_ROUTES = 4096;
+
+    private final Map<String, DestinationRoute> exactRoutes = new ConcurrentHashMap<>();
+    private final DestinationTrie patternRoutes = new DestinationTrie();
+    private final Map<String, ResolvedRoute> resolvedRoutes = new ConcurrentHashMap<>();
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private volatile int version;
+
+    /**
+     * @return route with the exact and pattern listeners of a concrete destination
+     */
+    @NotNull
+    DestinationRoute get(@NotNull String destination) {
+        if (patternRoutes.isEmpty()) {
+            return getExact(destination);
+        }
+
+        int currentVersion = version;
+        ResolvedRoute resolvedRoute = resolvedRoutes.get(destination);
+        if (resolvedRoute != null && resolvedRoute.version == currentVersion) {
+            return resolvedRoute.route;
+        }
+
+        DestinationRoute route = resolve(destination);
+        if (resolvedRoutes.size() >= MAX_RESOLVED_ROUTES) {
+            resolvedRoutes.clear();
+        }
+        resolvedRoutes.put(destination, new ResolvedRoute(route, currentVersion));
+        return route;
+    }
+
+    @NotNull
+    Topic getTopic(@NotNull String destination, @NotNull MessageBus messageBus) {
+        Topic topic = topics.get(destination);
+        if (topic == null) {
+            topic = new Topic(topics.size(), destination, messageBus, resolve(destination));
+            topics.put(destination, topic);
+        }
+        return topic;
+    }
+
+    /**
+     * @return route registered for the destination or pattern itself
+     */
+    @NotNull
+    DestinationRoute getRegistered(@NotNull String destinationOrPattern) {
+        return DestinationTrie.isPattern(destinationOrPattern)
+                ? patternRoutes.get(destinationOrPattern)
+                : getExact(destinationOrPattern);
+    }
+
+    /**
+     * Replaces the route registered for the destination or pattern, an empty route removes it.
+     */
+    void put(@NotNull String destinationOrPattern, @NotNull DestinationRoute route) {
+        boolean pattern = DestinationTrie.isPattern(destinationOrPattern);
+        if (pattern) {
+            patternRoutes.put(destinationOrPattern, route);
+        } else if (route.isEmpty()) {
+            exactRoutes.remove(destinationOrPattern);
+        } else {
+            exactRoutes.put(destinationOrPattern, route);
+        }
+
+        // bumped after the change: routes resolved before it carry an older version and are ignored from now on
+        version++;
+        resolvedRoutes.clear();
+
+        if (pattern) {
+            for (Topic topic : topics.values()) {
+                topic.setRoute(resolve(topic.getDestination()));
+            }
+        } else {
+            Topic topic = topics.get(destinationOrPattern);
+            if (topic != null) {
+                topic.setRoute(resolve(destinationOrPattern));
+            }
+        }
+    }
+
+    @NotNull
+    private DestinationRoute resolve(String destination) {
+        if (patternRoutes.isEmpty()) {
+            return getExact(destination);
+        }
+        return getExact(destination).mergedWith(patternRoutes.match(destination));
+    }
+
+    @NotNull
+    private DestinationRoute getExact(String destination) {
+        DestinationRoute route = exactRoutes.get(destination);
+        return route != null ? route : DestinationRoute.EMPTY;
+    }
+
+    private static final class ResolvedRoute {
+        private final DestinationRoute route;
+        private final int version;
+
+        private ResolvedRoute(DestinationRoute route, int version) {
+            this.route = route;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.android.messagebusexample.lib;
+
+/**
+ * Handle of a message sent with {@link MessageBus#sendMessageDelayed(Message, long, java.util.concurrent.TimeUnit)}
+ * or {@link MessageBus#sendMessageAt(Message, long)}.
+ */
+public interface ScheduledMessage {
+    /**
+     * Removes the message from the schedule and releases it.
+     *
+     * @return false if the message was sent or cancelled already
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    /**
+     * @return true once the message was handed to the async dispatcher
+     */
+    boolean isSent();
+}
@@ -1,17 +1,29 @@
 package com.android.messagebusexample.lib;
 
+import com.android.messagebusexample.lib.utils.Assert;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Executor;
 
 public final class Senders {
     private static final Logger LOGGER = LoggerFactory.getLogger(Senders.class);
+    private static final int DEFAULT_MIN_PARALLEL_LISTENERS = 4;
 
     private Senders() {
     }
 
     public static Sender simple() {
         return (message, to) -> {
+            if (to instanceof MessageListeners) {
+                MessageListeners listeners = (MessageListeners) to;
+                for (int i = 0, size = listeners.size(); i < size; i++) {
+                    listeners.get(i).receive(message);
+                }
+                return;
+            }
+
             for (MessageListener messageListener : to) {
                 messageListener.receive(message);
             }
@@ -20,13 +32,71 @@ public final class Senders {
 
     public static Sender continueOnFailure() {
         return (message, to) -> {
+            if (to instanceof MessageListeners) {
+                MessageListeners listeners = (MessageListeners) to;
+                for (int i = 0, size = listeners.size(); i < size; i++) {
+                    receiveLoggingFailure(listeners.get(i), message);
+                }
+                return;
+            }
+
             for (MessageListener messageListener : to) {
-                try {
-                    messageListener.receive(message);
-                } catch (MessageListenerException e) {
-                    LOGGER.error("Received exception while sending message", e);
+                receiveLoggingFailure(messageListener, message);
+            }
+        };
+    }
+
+    /**
+     * Calls the listeners of each priority in parallel on the executor and the calling thread, the priorities one
+     * after another from high to low. Returns when all listeners received the message. The first failure is thrown
+     * once the running listeners completed, listeners not started yet are skipped. Priorities with less than 4
+     * listeners are called inline.
+     */
+    public static Sender parallel(Executor executor) {
+        return new ParallelSender(executor, DEFAULT_MIN_PARALLEL_LISTENERS, false);
+    }
+
+    /**
+     * Like {@link #parallel(Executor)} but calls all listeners and logs failures.
+     */
+    public static Sender parallelContinueOnFailure(Executor executor) {
+        return new ParallelSender(executor, DEFAULT_MIN_PARALLEL_LISTENERS, true);
+    }
+
+    /**
+     * @param minParallelListeners number of listeners of a priority from which they are called in parallel
+     */
+    public static Sender parallel(Executor executor, int minParallelListeners, boolean continueOnFailure) {
+        return new ParallelSender(executor, minParallelListeners, continueOnFailure);
+    }
+
+    /**
+     * Calls all listeners, a listener which fails is handed to the dead letter queue to be retried later on its own,
+     * the others aren't affected and nothing is thrown.
+     */
+    public static Sender deadLettering(DeadLetterQueue deadLetterQueue) {
+        Assert.notNull(deadLetterQueue, "deadLetterQueue parameter can't be null.");
+
+        return (message, to) -> {
+            if (to instanceof MessageListeners) {
+                MessageListeners listeners = (MessageListeners) to;
+                for (int i = 0, size = listeners.size(); i < size; i++) {
+                    deadLetterQueue.deliver(listeners.get(i), message);
                 }
+                return;
+            }
+
+            for (MessageListener messageListener : to) {
+                deadLetterQueue.deliver(messageListener, message);
             }
         };
     }
+
+    private static void receiveLoggingFailure(MessageListener messageListener, Message message) {
+        try {
+            messageListener.receive(message);
+        } catch (MessageListenerException e) {
+            LOGGER.error("Received exception while sending message", e);
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last messages sent to the sticky destinations, kept per destination or per destination and action. The cache holds
+ * a reference to every message it keeps and evicts the least recently sent or replayed one beyond its capacity.
+ */
+final class StickyCache {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // sticky destination -> whether the last message is kept per action
+    private final Map<String, Boolean> stickyDestinations = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Message> messages = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity;
+
+    StickyCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    boolean isEmpty() {
+        return stickyDestinations.isEmpty();
+    }
+
+    void addDestination(@NotNull String destination, boolean perAction) {
+        stickyDestinations.put(destination, perAction);
+    }
+
+    void removeDestination(@NotNull String destination) {
+        if (stickyDestinations.remove(destination) != null) {
+            remove(destination);
+        }
+    }
+
+    synchronized void setCapacity(int capacity) {
+        Assert.isTrue(capacity > 0, "capacity parameter must be positive.");
+
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Keeps the message if its destination is sticky, replacing the previous one.
+     */
+    void offer(@NotNull Message message) {
+        Boolean perAction = stickyDestinations.get(message.getDestination());
+        if (perAction == null) {
+            return;
+        }
+
+        String key = perAction ? keyOf(message.getDestination(), message.getAction()) : message.getDestination();
+        message.retain();
+        Message previous;
+        synchronized (this) {
+            previous = messages.put(key, message);
+            evict();
+        }
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    /**
+     * @return the kept messages a listener of the action would have received, each retained for the caller
+     */
+    @NotNull
+    synchronized List<Message> retain(@NotNull String destination, @NotNull String action) {
+        List<Message> retained = new ArrayList<>();
+        Boolean perAction = stickyDestinations.get(destination);
+        if (perAction == null) {
+            return retained;
+        }
+
+        if (perAction && !Message.ACTION_ANY.equals(action)) {
+            addRetained(retained, messages.get(keyOf(destination, action)));
+            return retained;
+        }
+
+        // copied first, get() reorders the access ordered map
+        for (Message message : new ArrayList<>(messages.values())) {
+            if (message.isSameDestination(destination)
+                    && (Message.ACTION_ANY.equals(action) || action.equals(message.getAction()))) {
+                messages.get(perAction ? keyOf(destination, message.getAction()) : destination);
+                addRetained(retained, message);
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Removes the kept messages of the destination.
+     */
+    void remove(@NotNull String destination) {
+        List<Message> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Message> iterator = messages.values().iterator();
+            while (iterator.hasNext()) {
+                Message message = iterator.next();
+                if (message.isSameDestination(destination)) {
+                    removed.add(message);
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (Message message : removed) {
+            message.release();
+        }
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+
+    private static void addRetained(List<Message> retained, Message message) {
+        if (message != null) {
+            message.retain();
+            retained.add(message);
+        }
+    }
+
+    private void evict() {
+        Iterator<Message> iterator = messages.values().iterator();
+        while (messages.size() > capacity && iterator.hasNext()) {
+            Message eldest = iterator.next();
+            iterator.remove();
+            eldest.release();
+        }
+    }
+
+    private static String keyOf(String destination, String action) {
+        return destination + KEY_SEPARATOR + (action != null ? action : Message.ACTION_ANY);
+    }
+}
@@ -0,0 +1,52 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of counters spread over stripes picked by thread, each stripe on its own cache line, so threads counting at
+ * the same time rarely share a line. Reading a counter sums its stripes, which is only exact while nobody counts.
+ */
+final class StripedCounters {
+    private static final int SLOTS_PER_STRIPE = 8;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPE_MASK = stripeCount() - 1;
+
+    private final AtomicLongArray values;
+
+    /**
+     * @param counterCount up to 8 counters
+     */
+    StripedCounters(int counterCount) {
+        Assert.isTrue(counterCount <= SLOTS_PER_STRIPE, "counterCount parameter can't be more than 8.");
+        // leading stripe of padding keeps the first counters off the line of the array header
+        values = new AtomicLongArray((STRIPE_MASK + 2) * SLOTS_PER_STRIPE);
+    }
+
+    void increment(int counter) {
+        add(counter, 1L);
+    }
+
+    void add(int counter, long delta) {
+        int stripe = ((int) Thread.currentThread().getId() & STRIPE_MASK) + 1;
+        values.getAndAdd(stripe * SLOTS_PER_STRIPE + counter, delta);
+    }
+
+    long sum(int counter) {
+        long sum = 0L;
+        for (int stripe = 1; stripe <= STRIPE_MASK + 1; stripe++) {
+            sum += values.get(stripe * SLOTS_PER_STRIPE + counter);
+        }
+        return sum;
+    }
+
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+        int count = 1;
+        while (count < processors) {
+            count <<= 1;
+        }
+        return count;
+    }
+}
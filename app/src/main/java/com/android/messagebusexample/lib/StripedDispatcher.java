@@ -0,0 +1,232 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dispatcher keeping the order of messages per destination while delivering different destinations in parallel.
+ * <p>
+ * Destinations are hashed onto lanes served by one thread each. Within a lane every destination has its own mailbox
+ * and the mailboxes holding messages take turns: the lane thread delivers at most {@code quantum} entries of a mailbox
+ * before moving it to the back of the line, so a hot destination can't starve the other destinations of its lane.
+ */
+final class StripedDispatcher implements AsyncDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripedDispatcher.class);
+
+    private final Lane[] lanes;
+    private final int quantum;
+    private final ThreadFactory threadFactory;
+
+    private volatile boolean running;
+    private Delivery delivery;
+
+    StripedDispatcher(int laneCount, int quantum, ThreadFactory threadFactory) {
+        Assert.isTrue(laneCount > 0, "laneCount parameter must be positive.");
+        Assert.isTrue(quantum > 0, "quantum parameter must be positive.");
+        Assert.notNull(threadFactory, "threadFactory parameter can't be null.");
+
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+        this.quantum = quantum;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start(Delivery delivery) {
+        Assert.state(this.delivery == null, "Dispatcher is already started.");
+
+        this.delivery = delivery;
+        this.running = true;
+        for (Lane lane : lanes) {
+            threadFactory.newThread(lane).start();
+        }
+    }
+
+    @Override
+    public void dispatch(Message message, Sender sender) {
+        checkRunning();
+
+        String destination = message.getDestination();
+        laneOf(destination).enqueue(destination, new Entry(message, null, sender));
+    }
+
+    /**
+     * Splits the batch per destination, every destination keeps its part of the batch together.
+     */
+    @Override
+    public void dispatchAll(List<Message> messages, Sender sender) {
+        checkRunning();
+
+        Map<String, List<Message>> messagesByDestination = new LinkedHashMap<>();
+        for (Message message : messages) {
+            List<Message> destinationMessages = messagesByDestination.get(message.getDestination());
+            if (destinationMessages == null) {
+                destinationMessages = new ArrayList<>();
+                messagesByDestination.put(message.getDestination(), destinationMessages);
+            }
+            destinationMessages.add(message);
+        }
+
+        for (Map.Entry<String, List<Message>> entry : messagesByDestination.entrySet()) {
+            laneOf(entry.getKey()).enqueue(entry.getKey(), new Entry(null, entry.getValue(), sender));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.readyMailboxes.add(Mailbox.POISON);
+        }
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new RejectedExecutionException("Dispatcher is not running");
+        }
+    }
+
+    private Lane laneOf(String destination) {
+        int hash = destination.hashCode();
+        hash ^= hash >>> 16;
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    private final class Lane implements Runnable {
+        // a mailbox is removed once it's drained, entries are added under its monitor so none is added after that
+        private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+        private final BlockingQueue<Mailbox> readyMailboxes = new LinkedBlockingQueue<>();
+
+        private void enqueue(String destination, Entry entry) {
+            Mailbox mailbox;
+            while (true) {
+                mailbox = mailboxes.get(destination);
+                if (mailbox == null) {
+                    mailbox = new Mailbox(destination);
+                    Mailbox existing = mailboxes.putIfAbsent(destination, mailbox);
+                    if (existing != null) {
+                        mailbox = existing;
+                    }
+                }
+
+                synchronized (mailbox) {
+                    if (!mailbox.removed) {
+                        mailbox.entries.add(entry);
+                        break;
+                    }
+                }
+            }
+
+            if (mailbox.scheduled.compareAndSet(false, true)) {
+                readyMailboxes.add(mailbox);
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean stopping = false;
+            while (true) {
+                Mailbox mailbox;
+                try {
+                    mailbox = stopping ? readyMailboxes.poll() : readyMailboxes.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (mailbox == null) {
+                    return;
+                }
+                if (mailbox == Mailbox.POISON) {
+                    stopping = true;
+                    continue;
+                }
+
+                drain(mailbox);
+            }
+        }
+
+        private void drain(Mailbox mailbox) {
+            for (int i = 0; i < quantum; i++) {
+                Entry entry = mailbox.entries.poll();
+                if (entry == null) {
+                    break;
+                }
+                deliver(entry);
+            }
+
+            // unscheduled first, so a producer adding meanwhile either sees it unscheduled or is seen below
+            mailbox.scheduled.set(false);
+            if (!mailbox.entries.isEmpty()) {
+                if (mailbox.scheduled.compareAndSet(false, true)) {
+                    readyMailboxes.add(mailbox);
+                }
+                return;
+            }
+
+            synchronized (mailbox) {
+                // a producer which added an entry meanwhile schedules the mailbox itself
+                if (mailbox.entries.isEmpty()) {
+                    mailbox.removed = true;
+                    mailboxes.remove(mailbox.destination, mailbox);
+                }
+            }
+        }
+
+        private void deliver(Entry entry) {
+            try {
+                if (entry.batch != null) {
+                    delivery.deliverAll(entry.batch, entry.sender);
+                } else {
+                    delivery.deliver(entry.message, entry.sender);
+                }
+            } catch (Throwable e) {
+                // an Error would otherwise end the lane while it is marked as scheduled
+                LOGGER.error("Failed to deliver message: {}", entry.message != null ? entry.message : entry.batch, e);
+            }
+        }
+    }
+
+    private static final class Mailbox {
+        private static final Mailbox POISON = new Mailbox("");
+
+        private final String destination;
+        private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // guarded by this
+        private boolean removed;
+
+        private Mailbox(String destination) {
+            this.destination = destination;
+        }
+    }
+
+    private static final class Entry {
+        private final Message message;
+        private final List<Message> batch;
+        private final Sender sender;
+
+        private Entry(Message message, List<Message> batch, Sender sender) {
+            this.message = message;
+            this.batch = batch;
+            this.sender = sender;
+        }
+    }
+}
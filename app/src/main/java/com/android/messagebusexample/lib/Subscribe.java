@@ -1,9 +1,16 @@
 package com.android.messagebusexample.lib;
 
+import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
+/**
+ * Marks a method to be called for messages sent to each of the given destinations,
+ * see {@link MessageBus#register(Object)}.
+ */
 @Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
 public @interface Subscribe {
     To[] value();
 }
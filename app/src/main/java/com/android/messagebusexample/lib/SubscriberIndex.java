@@ -0,0 +1,23 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Subscriber methods collected at compile time, implemented by the class generated from the
+ * {@link Subscriber}/{@link Subscribe} annotations. See {@link MessageBus#addSubscriberIndex(SubscriberIndex)}.
+ */
+public interface SubscriberIndex {
+    /**
+     * @return the subscriber methods of the class or null if the class is unknown to this index
+     */
+    @Nullable
+    SubscriberMethod[] getSubscriberMethods(@NotNull Class<?> subscriberClass);
+
+    /**
+     * @return subscriber classes which are expected to be registered on application start,
+     * classes annotated with {@link ManualSubscription} are not included
+     */
+    @NotNull
+    Class<?>[] getSubscriberClassesRegisteredOnStart();
+}
@@ -0,0 +1,79 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Describes one {@link To} binding of a {@link Subscribe} annotated method. Instances are cached per subscriber
+ * class, equality is identity based so listeners of the same subscriber can be found again on unregister.
+ */
+public final class SubscriberMethod {
+    @NotNull
+    private final String methodName;
+
+    @NotNull
+    private final String destination;
+
+    @NotNull
+    private final String action;
+
+    @NotNull
+    private final Priority priority;
+
+    @NotNull
+    private final SubscriberMethodInvoker invoker;
+
+    public SubscriberMethod(@NotNull String methodName,
+                            @NotNull String destination,
+                            @NotNull String action,
+                            @NotNull Priority priority,
+                            @NotNull SubscriberMethodInvoker invoker) {
+        Assert.notNull(methodName, "methodName parameter can't be null.");
+        Assert.hasLength(destination, "destination parameter can't be null or empty.");
+        Assert.notNull(action, "action parameter can't be null.");
+        Assert.notNull(priority, "priority parameter can't be null.");
+        Assert.notNull(invoker, "invoker parameter can't be null.");
+
+        this.methodName = methodName;
+        this.destination = destination;
+        this.action = action;
+        this.priority = priority;
+        this.invoker = invoker;
+    }
+
+    @NotNull
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @NotNull
+    public String getDestination() {
+        return destination;
+    }
+
+    @NotNull
+    public String getAction() {
+        return action;
+    }
+
+    @NotNull
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @NotNull
+    public SubscriberMethodInvoker getInvoker() {
+        return invoker;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriberMethod" +
+                "{methodName='" + methodName + '\'' +
+                ", destination='" + destination + '\'' +
+                ", action='" + action + '\'' +
+                ", priority=" + priority +
+                '}';
+    }
+}
@@ -0,0 +1,165 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Finds the {@link Subscribe} annotated methods of a subscriber class. Generated {@link SubscriberIndex}es are
+ * consulted first, other classes are scanned once and later registrations of their instances are served from the cache.
+ */
+final class SubscriberMethodFinder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriberMethodFinder.class);
+    private static final boolean LAMBDA_METAFACTORY_AVAILABLE = isLambdaMetafactoryAvailable();
+
+    private final Map<Class<?>, SubscriberMethod[]> subscriberMethodsCache = new ConcurrentHashMap<>();
+    private final List<SubscriberIndex> subscriberIndexes = new CopyOnWriteArrayList<>();
+
+    void addSubscriberIndex(@NotNull SubscriberIndex subscriberIndex) {
+        subscriberIndexes.add(subscriberIndex);
+    }
+
+    @NotNull
+    List<SubscriberIndex> getSubscriberIndexes() {
+        return subscriberIndexes;
+    }
+
+    @NotNull
+    SubscriberMethod[] findSubscriberMethods(@NotNull Class<?> subscriberClass) {
+        SubscriberMethod[] subscriberMethods = subscriberMethodsCache.get(subscriberClass);
+        if (subscriberMethods == null) {
+            subscriberMethods = findInIndexes(subscriberClass);
+            if (subscriberMethods == null) {
+                LOGGER.debug("{} is not in a subscriber index, scanning it", subscriberClass.getName());
+                subscriberMethods = scan(subscriberClass);
+            }
+            subscriberMethodsCache.put(subscriberClass, subscriberMethods);
+        }
+        return subscriberMethods;
+    }
+
+    private SubscriberMethod[] findInIndexes(Class<?> subscriberClass) {
+        for (SubscriberIndex subscriberIndex : subscriberIndexes) {
+            SubscriberMethod[] subscriberMethods = subscriberIndex.getSubscriberMethods(subscriberClass);
+            if (subscriberMethods != null) {
+                return subscriberMethods;
+            }
+        }
+        return null;
+    }
+
+    private static SubscriberMethod[] scan(Class<?> subscriberClass) {
+        List<SubscriberMethod> subscriberMethods = new ArrayList<>();
+        // methods overridden by a subclass are only registered as declared by the subclass
+        Set<String> signatures = new HashSet<>();
+        for (Class<?> clazz = subscriberClass; clazz != null && !isSystemClass(clazz); clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                Subscribe subscribe = method.getAnnotation(Subscribe.class);
+                if (subscribe == null || method.isBridge() || method.isSynthetic()) {
+                    continue;
+                }
+                if (!signatures.add(signatureOf(method)) && !Modifier.isPrivate(method.getModifiers())) {
+                    continue;
+                }
+
+                SubscriberMethodInvoker invoker = createInvoker(method);
+                for (To to : subscribe.value()) {
+                    subscriberMethods.add(new SubscriberMethod(method.getName(), to.value(), to.action(), to.withPriority(), invoker));
+                }
+            }
+        }
+
+        if (subscriberMethods.isEmpty()) {
+            LOGGER.warn("No @Subscribe methods found in {}", subscriberClass.getName());
+        }
+        return subscriberMethods.toArray(new SubscriberMethod[subscriberMethods.size()]);
+    }
+
+    private static String signatureOf(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            signature.append(parameterType.getName()).append(',');
+        }
+        return signature.append(')').toString();
+    }
+
+    private static SubscriberMethodInvoker createInvoker(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (Modifier.isStatic(method.getModifiers())
+                || parameterTypes.length > 1
+                || (parameterTypes.length == 1 && !parameterTypes[0].isAssignableFrom(Message.class))) {
+            throw new IllegalArgumentException("@Subscribe method must be an instance method with no parameters "
+                    + "or a single Message parameter: " + method);
+        }
+
+        if (LAMBDA_METAFACTORY_AVAILABLE && isPublic(method)) {
+            try {
+                return LambdaMethodInvokers.create(method);
+            } catch (Throwable e) {
+                LOGGER.debug("Falling back to reflective invoker for {}", method, e);
+            }
+        }
+        return new ReflectiveInvoker(method);
+    }
+
+    private static boolean isPublic(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+    }
+
+    private static boolean isSystemClass(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.") || name.startsWith("androidx.");
+    }
+
+    private static boolean isLambdaMetafactoryAvailable() {
+        try {
+            Class.forName("java.lang.invoke.LambdaMetafactory");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Used where {@link java.lang.invoke.LambdaMetafactory} is missing (Android) or can't access the method.
+     * Android builds should use the generated subscriber index instead.
+     */
+    private static final class ReflectiveInvoker implements SubscriberMethodInvoker {
+        private final Method method;
+        private final boolean passMessage;
+
+        private ReflectiveInvoker(Method method) {
+            method.setAccessible(true);
+            this.method = method;
+            this.passMessage = method.getParameterTypes().length == 1;
+        }
+
+        @Override
+        public void invoke(Object subscriber, Message message) throws Exception {
+            try {
+                if (passMessage) {
+                    method.invoke(subscriber, message);
+                } else {
+                    method.invoke(subscriber);
+                }
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.android.messagebusexample.lib;
+
+/**
+ * Calls a single {@link To} bound subscriber method on the given subscriber instance.
+ * Invokers are created once per subscriber class and shared by all of its instances.
+ */
+public interface SubscriberMethodInvoker {
+    void invoke(Object subscriber, Message message) throws Exception;
+}
@@ -0,0 +1,50 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Adapts a subscriber instance and one of its {@link SubscriberMethod}s to a {@link MessageListener}.
+ */
+final class SubscriberMethodListener implements MessageListener {
+    @NotNull
+    private final Object subscriber;
+
+    @NotNull
+    private final SubscriberMethod subscriberMethod;
+
+    SubscriberMethodListener(@NotNull Object subscriber, @NotNull SubscriberMethod subscriberMethod) {
+        this.subscriber = subscriber;
+        this.subscriberMethod = subscriberMethod;
+    }
+
+    @Override
+    public void receive(Message message) throws MessageListenerException {
+        try {
+            subscriberMethod.getInvoker().invoke(subscriber, message);
+        } catch (MessageListenerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MessageListenerException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SubscriberMethodListener)) {
+            return false;
+        }
+
+        SubscriberMethodListener that = (SubscriberMethodListener) o;
+        return subscriber == that.subscriber && subscriberMethod == that.subscriberMethod;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(subscriber) + subscriberMethod.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return subscriber.getClass().getName() + "." + subscriberMethod.getMethodName();
+    }
+}
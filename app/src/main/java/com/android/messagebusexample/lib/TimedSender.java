@@ -0,0 +1,27 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sender of async messages queued while metrics are enabled, it carries the time they were queued at through the
+ * dispatcher so the lag is recorded without stamping the messages, which may be shared by other sends.
+ */
+final class TimedSender extends DelegatingSender {
+    @NotNull
+    private final BusMetrics metrics;
+    private final long queuedAtNanos;
+
+    TimedSender(@NotNull Sender sender, @NotNull BusMetrics metrics) {
+        super(sender);
+        this.metrics = metrics;
+        this.queuedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the lag in the metrics the message was queued with, they are just dropped if metrics were disabled
+     * in the meantime.
+     */
+    void dequeued(@NotNull Message message) {
+        metrics.dequeued(message, queuedAtNanos);
+    }
+}
@@ -0,0 +1,324 @@
+package com.android.messagebusexample.lib;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel: 4 levels of 256 slots, each slot of a level spanning a whole turn of the level below.
+ * A timeout goes into the slot of the lowest level covering its deadline and moves down a level each time the
+ * level below turns past the slot, so scheduling and cancelling are O(1) whatever the number of pending timeouts.
+ * <p>
+ * A single thread, started with the first timeout, owns the slots. Other threads hand timeouts and cancellations
+ * over through lock-free queues. The thread advances one tick at a time while timeouts are pending and parks
+ * otherwise. The timeouts expiring in the same tick are handed to the {@link Expiry} as one batch. Timeouts expire
+ * at or after their deadline, up to a tick late.
+ */
+final class TimingWheel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int LEVEL_BITS = 8;
+    private static final int LEVEL_COUNT = 4;
+    private static final int SLOT_COUNT = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final long MAX_TICKS = (1L << (LEVEL_BITS * LEVEL_COUNT)) - 1;
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    /**
+     * Receives the timeouts expired in a tick, on the thread of the wheel.
+     */
+    interface Expiry {
+        void expired(@NotNull List<Timeout> timeouts);
+    }
+
+    private final long tickNanos;
+    private final ThreadFactory threadFactory;
+    private final Expiry expiry;
+    private final Slot[][] levels = new Slot[LEVEL_COUNT][SLOT_COUNT];
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private volatile boolean idle;
+    private volatile Thread thread;
+    // owned by the thread of the wheel
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickDuration, @NotNull TimeUnit unit, @NotNull ThreadFactory threadFactory,
+                @NotNull Expiry expiry) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.threadFactory = threadFactory;
+        this.expiry = expiry;
+        for (Slot[] level : levels) {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                level[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException if the wheel is stopped
+     */
+    void schedule(@NotNull Timeout timeout, long delay, @NotNull TimeUnit unit) {
+        if (!running) {
+            throw new RejectedExecutionException("Timing wheel is stopped");
+        }
+
+        long deadline = System.nanoTime() - startNanos + Math.max(0L, unit.toNanos(delay));
+        timeout.deadlineTick = deadline < 0L ? Long.MAX_VALUE
+                : deadline / tickNanos + (deadline % tickNanos == 0L ? 0L : 1L);
+        timeout.wheel = this;
+        scheduled.add(timeout);
+
+        Thread current = thread;
+        if (current == null) {
+            current = startThread();
+        }
+        if (idle) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    /**
+     * Stops the thread, the pending timeouts are cancelled.
+     */
+    void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private synchronized Thread startThread() {
+        if (thread == null) {
+            thread = threadFactory.newThread(this::run);
+            thread.start();
+        }
+        return thread;
+    }
+
+    private void run() {
+        currentTick = currentTime();
+        while (running) {
+            if (size == 0) {
+                idle = true;
+                if (scheduled.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // nothing is pending in the slots, so the ticks passed while parked can be skipped
+                currentTick = currentTime();
+            }
+
+            long untilTick = startNanos + currentTick * tickNanos - System.nanoTime();
+            if (untilTick > 0L) {
+                LockSupport.parkNanos(this, untilTick);
+                continue;
+            }
+
+            takeCancelled();
+            takeScheduled();
+            List<Timeout> expired = null;
+            for (long now = currentTime(); currentTick <= now; ) {
+                expired = tick(expired);
+            }
+            if (expired != null) {
+                try {
+                    expiry.expired(expired);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to expire timeouts: {}", expired, e);
+                }
+            }
+        }
+
+        takeScheduled();
+        for (Slot[] level : levels) {
+            for (Slot slot : level) {
+                for (Timeout timeout = slot.head; timeout != null; timeout = timeout.next) {
+                    timeout.cancel();
+                }
+                slot.head = null;
+                slot.tail = null;
+            }
+        }
+        size = 0;
+    }
+
+    private long currentTime() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private void takeScheduled() {
+        for (Timeout timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            if (timeout.state.get() == STATE_PENDING) {
+                add(timeout);
+            }
+        }
+    }
+
+    private void takeCancelled() {
+        for (Timeout timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+                size--;
+            }
+        }
+    }
+
+    private void add(Timeout timeout) {
+        long deadline = Math.max(timeout.deadlineTick, currentTick);
+        long ticks = deadline - currentTick;
+        if (ticks > MAX_TICKS) {
+            // moved down once the top level turns far enough
+            deadline = currentTick + MAX_TICKS;
+            ticks = MAX_TICKS;
+        }
+
+        int level = 0;
+        while (ticks >= SLOT_COUNT) {
+            ticks >>>= LEVEL_BITS;
+            level++;
+        }
+        levels[level][(int) (deadline >>> (level * LEVEL_BITS)) & SLOT_MASK].add(timeout);
+        size++;
+    }
+
+    private List<Timeout> tick(List<Timeout> expired) {
+        int index = (int) currentTick & SLOT_MASK;
+        for (int level = 1; index == 0 && level < LEVEL_COUNT; level++) {
+            index = (int) (currentTick >>> (level * LEVEL_BITS)) & SLOT_MASK;
+            cascade(levels[level][index]);
+        }
+
+        Slot slot = levels[0][(int) currentTick & SLOT_MASK];
+        Timeout timeout = slot.head;
+        slot.head = null;
+        slot.tail = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+            size--;
+            if (timeout.state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+        currentTick++;
+        return expired;
+    }
+
+    private void cascade(Slot slot) {
+        Timeout timeout = slot.head;
+        slot.head = null;
+        slot.tail = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+            size--;
+            add(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Entry of the wheel, a timeout can be scheduled once.
+     */
+    abstract static class Timeout {
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+        private volatile TimingWheel wheel;
+        private long deadlineTick;
+        // owned by the thread of the wheel
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * @return false if the timeout expired or was cancelled already
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+
+            cancelled();
+            TimingWheel current = wheel;
+            if (current != null) {
+                current.cancelled.add(this);
+            }
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        /**
+         * Called once on cancel, on the cancelling thread.
+         */
+        void cancelled() {
+        }
+
+        /**
+         * Action of the timeout, for {@link Expiry}s running the expired timeouts one by one.
+         */
+        void expire() {
+        }
+    }
+
+    private static final class Slot {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.prev = tail;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
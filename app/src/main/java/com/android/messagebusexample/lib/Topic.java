@@ -0,0 +1,98 @@
+package com.android.messagebusexample.lib;
+
+import com.android.messagebusexample.lib.utils.Assert;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Pre-resolved handle of a destination returned by {@link MessageBus#topic(String)}. The topic holds the current
+ * route of its destination, which the bus replaces on every registration change, so sends through it skip the
+ * destination lookup. Messages sent through a topic have to carry the topic destination, other messages are
+ * rejected with an {@link IllegalArgumentException}.
+ * <p>
+ * Topics are interned: the bus returns the same instance with the same id for a destination during its lifetime.
+ */
+public final class Topic {
+    private final int id;
+
+    @NotNull
+    private final String destination;
+
+    @NotNull
+    private final MessageBus messageBus;
+
+    @NotNull
+    private volatile DestinationRoute route;
+
+    Topic(int id, @NotNull String destination, @NotNull MessageBus messageBus, @NotNull DestinationRoute route) {
+        this.id = id;
+        this.destination = destination;
+        this.messageBus = messageBus;
+        this.route = route;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @NotNull
+    public String getDestination() {
+        return destination;
+    }
+
+    public void send() throws MessageBusException {
+        send(messageBus.obtainMessage(destination));
+    }
+
+    public void send(String action) throws MessageBusException {
+        send(messageBus.obtainMessage(destination, action));
+    }
+
+    public void send(Message message) throws MessageBusException {
+        checkDestination(message);
+        messageBus.deliver(message, route.getListeners(message.getAction()), messageBus.getDefaultSender());
+    }
+
+    public void send(Message message, Sender sender) throws MessageBusException {
+        checkDestination(message);
+        messageBus.deliver(message, route.getListeners(message.getAction()), sender);
+    }
+
+    public void sendSilently(Message message) {
+        checkDestination(message);
+        messageBus.deliverSilently(message, route.getListeners(message.getAction()), messageBus.getDefaultSender());
+    }
+
+    /**
+     * Async messages are routed on the dispatcher thread like the ones of {@link MessageBus#sendMessageAsync(Message)}.
+     */
+    public void sendAsync(Message message) {
+        checkDestination(message);
+        messageBus.sendMessageAsync(message);
+    }
+
+    public void sendAsync(Message message, Sender sender) {
+        checkDestination(message);
+        messageBus.sendMessageAsync(message, sender);
+    }
+
+    private void checkDestination(Message message) {
+        Assert.notNull(message, "message parameter can't be null.");
+        if (!destination.equals(message.getDestination())) {
+            throw new IllegalArgumentException("message destination doesn't match the topic destination: "
+                    + message.getDestination());
+        }
+    }
+
+    void setRoute(@NotNull DestinationRoute route) {
+        this.route = route;
+    }
+
+    @Override
+    public String toString() {
+        return "Topic" +
+                "{id=" + id +
+                ", destination='" + destination + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.android.messagebusexample.lib;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How threads of the ring buffer dispatcher wait for messages or free slots, trading latency for CPU usage.
+ */
+public enum WaitStrategy {
+    /**
+     * Lowest latency, keeps a core busy per waiting thread.
+     */
+    BUSY_SPIN {
+        @Override
+        int idle(int counter) {
+            return counter + 1;
+        }
+    },
+    /**
+     * Spins for a short while and then yields the core to other threads.
+     */
+    YIELD {
+        @Override
+        int idle(int counter) {
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    },
+    /**
+     * Spins, yields and finally parks for periods doubling from 16 microseconds up to about 8 milliseconds, uses
+     * almost no CPU when idle. The first message after a long idle period may wait up to the longest park.
+     */
+    PARK {
+        @Override
+        int idle(int counter) {
+            if (counter >= SPIN_TRIES + YIELD_TRIES) {
+                int doublings = counter - SPIN_TRIES - YIELD_TRIES;
+                LockSupport.parkNanos(MIN_PARK_NANOS << doublings);
+                // stays at the longest park instead of overflowing
+                return doublings < MAX_PARK_DOUBLINGS ? counter + 1 : counter;
+            } else if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MIN_PARK_NANOS = 16_000L;
+    private static final int MAX_PARK_DOUBLINGS = 9;
+
+    /**
+     * Called in a loop while the condition waited for isn't met yet.
+     *
+     * @param counter 0 for the first call of a wait, afterwards the value returned by the previous call
+     */
+    abstract int idle(int counter);
+}
@@ -0,0 +1,74 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Async send throughput of the executor dispatcher against the ring buffer dispatcher, one producer thread sending
+ * to a single listener. Run manually, e.g. by removing the {@link Ignore}, on a device or a machine with several
+ * cores, the numbers of a single core mostly measure thread switches.
+ */
+@Ignore("benchmark, run manually")
+public class AsyncDispatcherBenchmark {
+    private static final int MESSAGE_COUNT = 2_000_000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @Test
+    public void executorDispatcher() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            run("executor", AsyncDispatchers.executor(executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void ringBufferDispatcherYielding() throws Exception {
+        run("ring buffer, yield", AsyncDispatchers.ringBuffer(8192, 1, WaitStrategy.YIELD));
+    }
+
+    @Test
+    public void ringBufferDispatcherParking() throws Exception {
+        run("ring buffer, park", AsyncDispatchers.ringBuffer(8192, 1, WaitStrategy.PARK));
+    }
+
+    private static void run(String name, AsyncDispatcher dispatcher) throws InterruptedException {
+        MessageBus bus = new MessageBus(dispatcher, MessagePool.create());
+        final long[] received = new long[1];
+        final CountDownLatch[] done = new CountDownLatch[1];
+        bus.registerListener("destination", message -> {
+            if (++received[0] % MESSAGE_COUNT == 0) {
+                done[0].countDown();
+            }
+        });
+        Topic topic = bus.topic("destination");
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + MEASURED_ROUNDS; round++) {
+            done[0] = new CountDownLatch(1);
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                topic.sendAsync(bus.obtainMessage("destination"));
+            }
+            assertTrue(done[0].await(60, TimeUnit.SECONDS));
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        bus.shutdown();
+
+        System.out.println(String.format(Locale.US, "%-20s %,12d messages/s", name,
+                MESSAGE_COUNT * TimeUnit.SECONDS.toNanos(1) / best));
+    }
+}
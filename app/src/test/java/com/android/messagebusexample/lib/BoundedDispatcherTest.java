@@ -0,0 +1,175 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedDispatcherTest {
+    private final CountDownLatch workerBlocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+    private MessageBus bus;
+
+    private BoundedDispatcher start(BoundedDispatcher dispatcher) throws InterruptedException {
+        bus = new MessageBus(dispatcher);
+        bus.registerListener("destination", message -> {
+            workerBlocked.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(message.getExtraData().getInt("index"));
+        });
+
+        // the first message occupies the only worker, the following ones stay queued
+        assertEquals(DispatchResult.ACCEPTED, send(0));
+        assertTrue(workerBlocked.await(10, TimeUnit.SECONDS));
+        return dispatcher;
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        if (bus != null) {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void dropOldestReplacesTheOldestQueuedMessage() throws Exception {
+        BoundedDispatcher dispatcher = start(AsyncDispatchers.bounded(2, 1, OverflowPolicy.DROP_OLDEST));
+
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+        assertEquals(DispatchResult.ACCEPTED, send(2));
+        assertEquals(DispatchResult.ACCEPTED, send(3));
+        assertEquals(2, dispatcher.getQueueDepth("destination"));
+        assertEquals(1L, dispatcher.getDroppedCount("destination"));
+
+        assertDelivered(0, 2, 3);
+    }
+
+    @Test
+    public void dropNewestKeepsTheQueuedMessages() throws Exception {
+        BoundedDispatcher dispatcher = start(AsyncDispatchers.bounded(2, 1, OverflowPolicy.DROP_NEWEST));
+
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+        assertEquals(DispatchResult.ACCEPTED, send(2));
+        assertEquals(DispatchResult.DROPPED, send(3));
+        assertEquals(1L, dispatcher.getDroppedCount("destination"));
+
+        assertDelivered(0, 1, 2);
+    }
+
+    @Test
+    public void rejectRefusesMessagesWhileTheQueueIsFull() throws Exception {
+        start(AsyncDispatchers.bounded(1, 1, OverflowPolicy.REJECT));
+
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+        assertEquals(DispatchResult.REJECTED, send(2));
+
+        assertDelivered(0, 1);
+    }
+
+    @Test
+    public void blockWithTimeoutGivesUpAfterTheTimeout() throws Exception {
+        start(AsyncDispatchers.bounded(1, 1, OverflowPolicy.BLOCK_WITH_TIMEOUT, 50L, TimeUnit.MILLISECONDS,
+                AsyncDispatchers.daemonThreadFactory("bounded-test-")));
+
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+        long start = System.nanoTime();
+        assertEquals(DispatchResult.TIMED_OUT, send(2));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50L));
+
+        assertDelivered(0, 1);
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws Exception {
+        BoundedDispatcher dispatcher = start(AsyncDispatchers.bounded(1, 1, OverflowPolicy.BLOCK));
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+
+        final AtomicInteger sent = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            send(2);
+            sent.incrementAndGet();
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(0, sent.get());
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        unblock.countDown();
+        producer.join(10_000);
+        assertEquals(1, sent.get());
+        assertDelivered(0, 1, 2);
+    }
+
+    @Test
+    public void workerSurvivesErrorsThrownByListeners() throws Exception {
+        start(AsyncDispatchers.bounded(4, 1, OverflowPolicy.BLOCK));
+        bus.registerListener("error", message -> {
+            throw new AssertionError("listener error");
+        });
+
+        bus.sendMessageAsync("error");
+        assertEquals(DispatchResult.ACCEPTED, send(1));
+
+        assertDelivered(0, 1);
+    }
+
+    @Test
+    public void workerSendingIntoTheFullQueueDeliversInline() throws Exception {
+        assertWorkerSendsDontWait(AsyncDispatchers.bounded(1, 1, OverflowPolicy.BLOCK));
+    }
+
+    @Test
+    public void workerSendingIntoTheFullQueueDoesntWaitForTheTimeout() throws Exception {
+        assertWorkerSendsDontWait(AsyncDispatchers.bounded(1, 1, OverflowPolicy.BLOCK_WITH_TIMEOUT, 10L,
+                TimeUnit.SECONDS, AsyncDispatchers.daemonThreadFactory("bounded-test-")));
+    }
+
+    private void assertWorkerSendsDontWait(BoundedDispatcher dispatcher) throws InterruptedException {
+        bus = new MessageBus(dispatcher);
+        final AtomicInteger leaves = new AtomicInteger();
+        final List<DispatchResult> results = Collections.synchronizedList(new ArrayList<DispatchResult>());
+        bus.registerListener("fan-out", message -> {
+            for (int i = 0; i < 10; i++) {
+                results.add(bus.trySendMessageAsync(Message.forDestination("leaf")));
+            }
+        });
+        bus.registerListener("leaf", message -> leaves.incrementAndGet());
+
+        bus.sendMessageAsync("fan-out");
+
+        RingBufferDispatcherTest.awaitCount(leaves, 10);
+        assertEquals(Collections.nCopies(10, DispatchResult.ACCEPTED), results);
+    }
+
+    private DispatchResult send(int index) {
+        Message message = Message.forDestination("destination");
+        message.getExtraData().putInt("index", index);
+        return bus.trySendMessageAsync(message);
+    }
+
+    private void assertDelivered(Integer... indexes) throws InterruptedException {
+        unblock.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (delivered.size() < indexes.length && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(20);
+        assertEquals(Arrays.asList(indexes), delivered);
+    }
+}
@@ -0,0 +1,126 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BusMetricsTest {
+    @Test
+    public void destinationCountersCountMessagesDeliveriesFailuresAndUnrouted() {
+        MessageBus bus = new MessageBus(Runnable::run);
+        bus.enableMetrics();
+        bus.registerListener("orders", message -> { });
+        bus.registerListener("orders", message -> {
+            throw new IllegalStateException("failing listener");
+        });
+
+        bus.sendMessageAsync("orders");
+        bus.sendMessageAsync("orders");
+        bus.sendMessageAsync("nowhere");
+
+        MetricsSnapshot.Destination orders = bus.getMetricsSnapshot().getDestinations().get("orders");
+        assertEquals(2L, orders.getMessages());
+        assertEquals(4L, orders.getDeliveries());
+        assertEquals(2L, orders.getFailures());
+        assertEquals(0L, orders.getUnrouted());
+        assertEquals(0L, orders.getQueueDepth());
+        assertEquals(2L, orders.getLag().getCount());
+        MetricsSnapshot.Destination nowhere = bus.getMetricsSnapshot().getDestinations().get("nowhere");
+        assertEquals(1L, nowhere.getMessages());
+        assertEquals(1L, nowhere.getUnrouted());
+        assertEquals(0L, nowhere.getDeliveries());
+    }
+
+    @Test
+    public void queueDepthCountsAsyncMessagesNotDeliveredYet() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        MessageBus bus = new MessageBus(tasks::add);
+        bus.enableMetrics();
+        bus.registerListener("orders", message -> { });
+
+        for (int i = 0; i < 3; i++) {
+            bus.sendMessageAsync("orders");
+        }
+        assertEquals(3L, bus.getMetricsSnapshot().getQueueDepth());
+
+        tasks.poll().run();
+        assertEquals(2L, bus.getMetricsSnapshot().getDestinations().get("orders").getQueueDepth());
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertEquals(0L, bus.getMetricsSnapshot().getQueueDepth());
+        assertEquals(3L, bus.getMetricsSnapshot().getDestinations().get("orders").getMessages());
+    }
+
+    @Test
+    public void histogramBucketsAreContiguousAndAtMostAnEighthWide() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+
+        for (int bucket = 8; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long lowerBound = LatencyHistogram.upperBoundOf(bucket - 1) + 1;
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lowerBound));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upperBound));
+            assertTrue("bucket " + bucket, (upperBound - lowerBound + 1) * 8 <= lowerBound);
+        }
+        assertEquals((1L << 40) - 1, LatencyHistogram.upperBoundOf(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void histogramSnapshotSumsCountsAndPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        histogram.record(-5L);
+        histogram.record(Long.MAX_VALUE);
+
+        MetricsSnapshot.Histogram snapshot = histogram.snapshot();
+        assertEquals(102L, snapshot.getCount());
+        assertEquals(5050L * 1000L + (1L << 40) - 1, snapshot.getSum());
+        assertEquals(1L, snapshot.getCount(0));
+        assertEquals(1L, snapshot.getCount(LatencyHistogram.BUCKET_COUNT - 1));
+        long p50 = snapshot.getPercentile(50.0);
+        assertTrue("p50 " + p50, p50 >= 50_000L && p50 <= 50_000L * 9 / 8);
+        assertEquals((1L << 40) - 1, snapshot.getPercentile(100.0));
+        assertEquals(0L, new LatencyHistogram().snapshot().getPercentile(99.0));
+    }
+
+    @Test
+    public void unregisteredListenersAreNotKeptReachable() throws Exception {
+        MessageBus bus = new MessageBus(Runnable::run);
+        bus.enableMetrics();
+        WeakReference<MessageListener> listener = registerSendAndUnregister(bus);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (listener.get() != null && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(listener.get());
+        assertTrue(bus.getMetricsSnapshot().getListenerTimes().isEmpty());
+    }
+
+    private static WeakReference<MessageListener> registerSendAndUnregister(MessageBus bus) throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        MessageListener listener = message -> received.incrementAndGet();
+        bus.registerListener("destination", listener);
+        bus.sendMessage("destination");
+        assertEquals(1L, bus.getMetricsSnapshot().getListenerTimes().get(listener).getCount());
+
+        bus.unregisterListener("destination", listener);
+        return new WeakReference<>(listener);
+    }
+}
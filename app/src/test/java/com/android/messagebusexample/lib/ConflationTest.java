@@ -0,0 +1,95 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConflationTest {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<String> delivered = new ArrayList<>();
+    private final MessageBus bus = new MessageBus(tasks::add);
+
+    @Before
+    public void setUp() {
+        bus.registerListener("state", message -> delivered.add(message.getExtraData().getString("value")));
+    }
+
+    @Test
+    public void latestMessageIsDeliveredInPlaceOfThePendingOne() {
+        bus.conflate("state");
+
+        send("state", null, "first");
+        send("state", null, "second");
+        send("state", null, "third");
+        assertEquals(1, tasks.size());
+        runTasks();
+        send("state", null, "fourth");
+        runTasks();
+
+        assertEquals(Arrays.asList("third", "fourth"), delivered);
+    }
+
+    @Test
+    public void messagesAreConflatedPerKey() {
+        bus.conflate("state", "sensor");
+
+        send("state", "a", "a1");
+        send("state", "b", "b1");
+        send("state", "a", "a2");
+        send("state", "b", "b2");
+        send("state", "a", "a3");
+        runTasks();
+
+        assertEquals(Arrays.asList("a3", "b2"), delivered);
+    }
+
+    @Test
+    public void stoppingConflationSendsTheLatestMessagesOn() {
+        bus.conflate("state");
+        send("state", null, "first");
+        send("state", null, "second");
+
+        bus.stopConflating("state");
+        send("state", null, "third");
+        runTasks();
+
+        // the dispatched message isn't replaced anymore, the latest one is sent on its own
+        assertEquals(Arrays.asList("first", "second", "third"), delivered);
+    }
+
+    @Test
+    public void latestMessageSentWithAPriorityIsDelivered() {
+        bus.conflate("state");
+
+        send("state", null, "first");
+        Message latest = Message.forDestination("state");
+        latest.getExtraData().putString("value", "latest");
+        bus.sendMessageAsync(latest, Priority.HIGH);
+        runTasks();
+
+        assertEquals(Arrays.asList("latest"), delivered);
+    }
+
+    private void send(String destination, String sensor, String value) {
+        Message message = Message.forDestination(destination);
+        if (sensor != null) {
+            message.getExtraData().putString("sensor", sensor);
+        }
+        message.getExtraData().putString("value", value);
+        bus.sendMessageAsync(message);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeadLetterQueueTest {
+    private final MessageBus bus = new MessageBus(Runnable::run);
+    private final List<Long> attemptNanos = Collections.synchronizedList(new ArrayList<Long>());
+    private volatile boolean failing = true;
+    private final MessageListener flakyListener = message -> {
+        attemptNanos.add(System.nanoTime());
+        if (failing) {
+            throw new IllegalStateException("attempt " + attemptNanos.size());
+        }
+    };
+
+    @After
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    @Test
+    public void failedDeliveriesAreRetriedWithGrowingBackoffAndThenStored() throws Exception {
+        DeadLetterQueue deadLetters = DeadLetterQueue.create(bus, 3, 20L, 40L, TimeUnit.MILLISECONDS, 10, Runnable::run);
+        final AtomicInteger otherDeliveries = new AtomicInteger();
+        bus.registerListener("orders", flakyListener);
+        bus.registerListener("orders", message -> otherDeliveries.incrementAndGet());
+
+        bus.sendMessage(Message.forDestination("orders"), Senders.deadLettering(deadLetters));
+        awaitDeadLetters(deadLetters, 1);
+
+        assertEquals(4, attemptNanos.size());
+        assertEquals(1, otherDeliveries.get());
+        assertEquals(0, deadLetters.getPendingRetryCount());
+        // backoff doubles from 20 ms and is capped at 40 ms, timeouts never expire early
+        long[] minimumGapsMillis = {20L, 40L, 40L};
+        for (int i = 0; i < minimumGapsMillis.length; i++) {
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(attemptNanos.get(i + 1) - attemptNanos.get(i));
+            assertTrue("gap " + i + " was " + gapMillis + " ms", gapMillis >= minimumGapsMillis[i]);
+        }
+
+        DeadLetterQueue.DeadLetter deadLetter = deadLetters.getDeadLetters().get(0);
+        assertSame(flakyListener, deadLetter.getListener());
+        assertEquals(4, deadLetter.getAttempts());
+        assertEquals("attempt 4", deadLetter.getCause().getMessage());
+        assertEquals("orders", deadLetter.getMessage().getDestination());
+    }
+
+    @Test
+    public void oldestDeadLettersAreDroppedBeyondTheCapacity() throws Exception {
+        DeadLetterQueue deadLetters = DeadLetterQueue.create(bus, 0, 1L, 1L, TimeUnit.MILLISECONDS, 2, Runnable::run);
+        bus.registerListener("orders", flakyListener);
+
+        for (int i = 0; i < 3; i++) {
+            Message message = Message.forDestination("orders");
+            message.getExtraData().putInt("order", i);
+            bus.sendMessage(message, Senders.deadLettering(deadLetters));
+        }
+
+        List<DeadLetterQueue.DeadLetter> stored = deadLetters.getDeadLetters();
+        assertEquals(2, stored.size());
+        assertEquals(1, stored.get(0).getMessage().getExtraData().getInt("order"));
+        assertEquals(2, stored.get(1).getMessage().getExtraData().getInt("order"));
+    }
+
+    @Test
+    public void replayedDeadLettersAreDeliveredAgainAndRemoved() throws Exception {
+        DeadLetterQueue deadLetters = DeadLetterQueue.create(bus, 0, 1L, 1L, TimeUnit.MILLISECONDS, 10, Runnable::run);
+        bus.registerListener("orders", flakyListener);
+        bus.sendMessage(Message.forDestination("orders"), Senders.deadLettering(deadLetters));
+        bus.sendMessage(Message.forDestination("orders"), Senders.deadLettering(deadLetters));
+        DeadLetterQueue.DeadLetter first = deadLetters.getDeadLetters().get(0);
+
+        failing = false;
+        assertTrue(deadLetters.replay(first));
+        assertFalse(deadLetters.replay(first));
+        assertEquals(1, deadLetters.size());
+        assertEquals(1, deadLetters.replayAll());
+
+        assertEquals(0, deadLetters.size());
+        assertEquals(4, attemptNanos.size());
+    }
+
+    @Test
+    public void pendingRetriesAreStoredWhenTheBusShutsDown() throws Exception {
+        DeadLetterQueue deadLetters = DeadLetterQueue.create(bus, 3, 1L, 1L, TimeUnit.HOURS, 10, Runnable::run);
+        bus.registerListener("orders", flakyListener);
+        bus.sendMessage(Message.forDestination("orders"), Senders.deadLettering(deadLetters));
+        assertEquals(1, deadLetters.getPendingRetryCount());
+
+        bus.shutdown();
+        awaitDeadLetters(deadLetters, 1);
+
+        assertEquals(0, deadLetters.getPendingRetryCount());
+        assertEquals(1, deadLetters.getDeadLetters().get(0).getAttempts());
+    }
+
+    private static void awaitDeadLetters(DeadLetterQueue deadLetters, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (deadLetters.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, deadLetters.size());
+    }
+}
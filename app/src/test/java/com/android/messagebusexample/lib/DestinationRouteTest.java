@@ -0,0 +1,77 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationRouteTest {
+    private final MessageListener any = message -> { };
+    private final MessageListener created = message -> { };
+    private final MessageListener urgentCreated = message -> { };
+    private final MessageListener deleted = message -> { };
+
+    private final DestinationRoute route = DestinationRoute.EMPTY
+            .with(Message.ACTION_ANY, any, Priority.NORMAL)
+            .with("created", created, Priority.LOW)
+            .with("created", urgentCreated, Priority.HIGH)
+            .with("deleted", deleted, Priority.NORMAL);
+
+    @Test
+    public void actionListenersAreMergedWithAnyActionListenersByPriority() {
+        assertEquals(Arrays.asList(urgentCreated, any, created), listenersOf(route, "created"));
+        // listeners of the action go first on equal priority
+        assertEquals(Arrays.asList(deleted, any), listenersOf(route, "deleted"));
+    }
+
+    @Test
+    public void messagesWithoutOrWithUnknownActionOnlyReachAnyActionListeners() {
+        assertEquals(Collections.singletonList(any), listenersOf(route, null));
+        assertEquals(Collections.singletonList(any), listenersOf(route, Message.ACTION_ANY));
+        assertEquals(Collections.singletonList(any), listenersOf(route, "updated"));
+    }
+
+    @Test
+    public void listenersAreRemovedPerActionOrForAllActions() {
+        DestinationRoute withoutCreated = route.without("created", created);
+        assertEquals(Arrays.asList(urgentCreated, any), listenersOf(withoutCreated, "created"));
+        assertSame(withoutCreated, withoutCreated.without("deleted", created));
+
+        DestinationRoute withoutUrgent = DestinationRoute.EMPTY
+                .with("created", urgentCreated, Priority.HIGH)
+                .with("deleted", urgentCreated, Priority.HIGH)
+                .without(urgentCreated);
+        assertTrue(withoutUrgent.isEmpty());
+        assertFalse(withoutUrgent.contains("created", urgentCreated));
+    }
+
+    @Test
+    public void routeTableResolvesActionsOfExactAndPatternRoutes() {
+        RouteTable routes = new RouteTable();
+        routes.put("orders.new", route);
+        routes.put("orders.*", DestinationRoute.EMPTY.with("created", deleted, Priority.HIGHER));
+
+        assertEquals(Arrays.asList(deleted, urgentCreated, any, created),
+                listenersOf(routes.get("orders.new"), "created"));
+        assertEquals(Collections.singletonList(deleted), listenersOf(routes.get("orders.old"), "created"));
+        assertTrue(routes.get("orders.old").getListeners("deleted").isEmpty());
+
+        routes.put("orders.new", DestinationRoute.EMPTY);
+        assertEquals(Collections.singletonList(deleted), listenersOf(routes.get("orders.new"), "created"));
+    }
+
+    private static List<MessageListener> listenersOf(DestinationRoute route, String action) {
+        List<MessageListener> listeners = new ArrayList<>();
+        for (MessageListener listener : route.getListeners(action)) {
+            listeners.add(listener);
+        }
+        return listeners;
+    }
+}
@@ -0,0 +1,85 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationTrieTest {
+    private final DestinationTrie trie = new DestinationTrie();
+
+    @Test
+    public void anySegmentMatchesExactlyOneSegment() {
+        MessageListener listener = put("orders.*");
+
+        assertMatches("orders.new", listener);
+        assertMatches("orders");
+        assertMatches("orders.new.eu");
+        assertMatches("invoices.new");
+    }
+
+    @Test
+    public void anySegmentsMatchesZeroOrMoreSegments() {
+        MessageListener prefix = put("orders.#");
+        MessageListener suffix = put("#.eu");
+        MessageListener infix = put("orders.#.eu");
+
+        assertMatches("orders", prefix);
+        assertMatches("orders.new", prefix);
+        assertMatches("orders.new.eu", prefix, suffix, infix);
+        assertMatches("orders.eu", prefix, suffix, infix);
+        assertMatches("orders.new.large.eu", prefix, suffix, infix);
+        assertMatches("eu", suffix);
+        assertMatches("invoices.new");
+    }
+
+    @Test
+    public void patternMatchedOnSeveralPathsIsMergedOnce() {
+        MessageListener listener = put("#.#");
+
+        assertEquals(1, trie.match("orders.new.eu").getListeners(null).size());
+        assertMatches("orders.new.eu", listener);
+    }
+
+    @Test
+    public void removedPatternsNoLongerMatch() {
+        MessageListener all = put("#");
+        MessageListener orders = put("orders.*");
+
+        trie.put("orders.*", DestinationRoute.EMPTY);
+        assertMatches("orders.new", all);
+        assertTrue(trie.get("orders.*").isEmpty());
+
+        trie.put("#", DestinationRoute.EMPTY);
+        assertTrue(trie.isEmpty());
+        assertMatches("orders.new");
+        assertFalse(trie.match("orders.new").getListeners(null).contains(orders));
+    }
+
+    @Test
+    public void onlyWholeWildcardSegmentsArePatterns() {
+        assertTrue(DestinationTrie.isPattern("*"));
+        assertTrue(DestinationTrie.isPattern("orders.#.eu"));
+        assertFalse(DestinationTrie.isPattern("orders.new*"));
+        assertFalse(DestinationTrie.isPattern("orders.#eu"));
+    }
+
+    private MessageListener put(String pattern) {
+        MessageListener listener = message -> { };
+        trie.put(pattern, DestinationRoute.EMPTY.with(Message.ACTION_ANY, listener, Priority.NORMAL));
+        return listener;
+    }
+
+    private void assertMatches(String destination, MessageListener... expected) {
+        Set<MessageListener> matched = new HashSet<>();
+        for (MessageListener listener : trie.match(destination).getListeners(null)) {
+            matched.add(listener);
+        }
+        assertEquals(destination, new HashSet<>(Arrays.asList(expected)), matched);
+    }
+}
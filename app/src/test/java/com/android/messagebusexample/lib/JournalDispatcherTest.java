@@ -0,0 +1,184 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalDispatcherTest {
+    private static final int SEGMENT_SIZE = 256;
+    private static final String PAYLOAD = "payload \uD83D\uDE00";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void undeliveredMessagesAreReplayedAfterSegmentRolls() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        HoldingDispatcher holding = new HoldingDispatcher();
+        RecordingDelivery recording = new RecordingDelivery();
+        JournalDispatcher journal = open(directory, holding, recording);
+        for (int i = 0; i < 20; i++) {
+            journal.dispatch(message(i), Senders.simple());
+        }
+        int segmentsBeforeDelivery = segmentCount(directory);
+        assertTrue("segments: " + segmentsBeforeDelivery, segmentsBeforeDelivery > 2);
+
+        holding.deliver(10);
+        journal.shutdown();
+        // the sealed segments whose messages were all delivered are deleted right away
+        assertTrue(segmentCount(directory) < segmentsBeforeDelivery);
+
+        HoldingDispatcher replaying = new HoldingDispatcher();
+        RecordingDelivery replayed = new RecordingDelivery();
+        JournalDispatcher restarted = open(directory, replaying, replayed);
+        assertEquals(10, restarted.replay());
+        replaying.deliver(10);
+
+        assertEquals(indexes(0, 10), recording.indexes());
+        assertEquals(indexes(10, 20), replayed.indexes());
+        for (Message message : replayed.messages) {
+            assertEquals(PAYLOAD, message.getExtraData().getString("payload"));
+        }
+        // only the segment opened by the restart is left once the replayed messages are delivered
+        assertEquals(1, segmentCount(directory));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void journaledBatchesAreReplayedAsSingleMessages() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        JournalDispatcher journal = open(directory, new HoldingDispatcher(), new RecordingDelivery());
+        journal.dispatchAll(Arrays.asList(message(0), message(1), message(2)), Senders.simple());
+        journal.shutdown();
+
+        HoldingDispatcher replaying = new HoldingDispatcher();
+        RecordingDelivery replayed = new RecordingDelivery();
+        JournalDispatcher restarted = open(directory, replaying, replayed);
+        assertEquals(3, restarted.replay());
+        replaying.deliver(3);
+
+        assertEquals(indexes(0, 3), replayed.indexes());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void messageDispatchedTwiceIsAcknowledgedPerDispatch() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        HoldingDispatcher holding = new HoldingDispatcher();
+        JournalDispatcher journal = open(directory, holding, new RecordingDelivery());
+        Message message = message(0);
+        journal.dispatch(message, Senders.simple());
+        journal.dispatch(message, Senders.simple());
+        holding.deliver(1);
+        journal.shutdown();
+
+        HoldingDispatcher replaying = new HoldingDispatcher();
+        JournalDispatcher restarted = open(directory, replaying, new RecordingDelivery());
+        assertEquals(1, restarted.replay());
+        replaying.deliver(1);
+        restarted.shutdown();
+
+        JournalDispatcher drained = open(directory, new HoldingDispatcher(), new RecordingDelivery());
+        assertEquals(0, drained.replay());
+        drained.shutdown();
+    }
+
+    private static JournalDispatcher open(File directory, AsyncDispatcher delegate, AsyncDispatcher.Delivery delivery) {
+        JournalDispatcher journal = AsyncDispatchers.durable(directory, delegate, SEGMENT_SIZE, FsyncPolicy.NEVER,
+                100L, TimeUnit.MILLISECONDS);
+        journal.start(delivery);
+        return journal;
+    }
+
+    private static Message message(int index) {
+        Message message = Message.forDestination("destination");
+        message.getExtraData().putInt("index", index);
+        message.getExtraData().putString("payload", PAYLOAD);
+        return message;
+    }
+
+    private static List<Integer> indexes(int from, int to) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static int segmentCount(File directory) {
+        String[] names = directory.list();
+        return names != null ? names.length : 0;
+    }
+
+    /**
+     * Keeps the dispatched messages until the test delivers them, the ones left behind stand for a crash.
+     */
+    private static final class HoldingDispatcher implements AsyncDispatcher {
+        private final List<Object[]> held = new ArrayList<>();
+        private Delivery delivery;
+
+        @Override
+        public void start(Delivery delivery) {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void dispatch(Message message, Sender sender) {
+            held.add(new Object[]{Collections.singletonList(message), sender, Boolean.FALSE});
+        }
+
+        @Override
+        public void dispatchAll(List<Message> messages, Sender sender) {
+            held.add(new Object[]{messages, sender, Boolean.TRUE});
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @SuppressWarnings("unchecked")
+        void deliver(int count) {
+            for (int i = 0; i < count; i++) {
+                Object[] entry = held.remove(0);
+                List<Message> messages = (List<Message>) entry[0];
+                if ((Boolean) entry[2]) {
+                    delivery.deliverAll(messages, (Sender) entry[1]);
+                } else {
+                    delivery.deliver(messages.get(0), (Sender) entry[1]);
+                }
+            }
+        }
+    }
+
+    private static final class RecordingDelivery implements AsyncDispatcher.Delivery {
+        private final List<Message> messages = new ArrayList<>();
+
+        @Override
+        public void deliver(Message message, Sender sender) {
+            messages.add(message);
+        }
+
+        @Override
+        public void deliverAll(List<Message> messages, Sender sender) {
+            this.messages.addAll(messages);
+        }
+
+        List<Integer> indexes() {
+            List<Integer> indexes = new ArrayList<>();
+            for (Message message : messages) {
+                indexes.add(message.getExtraData().getInt("index"));
+            }
+            return indexes;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedRingTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MessageCodec codec = MessageCodec.create();
+
+    @Test
+    public void messagesWrapAroundTheRingInOrder() throws Exception {
+        File file = folder.newFile("ring");
+        MappedRing writer = MappedRing.open(file, 256);
+        MappedRing reader = MappedRing.open(file, 256);
+
+        int written = 0;
+        int read = 0;
+        while (read < 1000) {
+            // varying sizes, so records end at every alignment and padding is needed at different places
+            while (written < 1000 && writer.offer(message(written, written % 13), codec)) {
+                written++;
+            }
+            Message message = reader.poll(codec);
+            assertEquals(read, message.getExtraData().getInt("index"));
+            assertEquals(payload(read % 13), message.getExtraData().getString("payload"));
+            read++;
+        }
+        assertNull(reader.poll(codec));
+    }
+
+    @Test
+    public void recordNotFittingBeforeTheEndIsPaddedToTheStart() throws Exception {
+        File file = folder.newFile("ring");
+        MappedRing writer = MappedRing.open(file, 128);
+        MappedRing reader = MappedRing.open(file, 128);
+        // records take 52 bytes, after two only 24 bytes are left before the end of the ring
+        assertTrue(writer.offer(message(0, 20), codec));
+        assertTrue(writer.offer(message(1, 20), codec));
+        assertEquals(0, reader.poll(codec).getExtraData().getInt("index"));
+        assertEquals(1, reader.poll(codec).getExtraData().getInt("index"));
+
+        assertTrue(writer.offer(message(2, 20), codec));
+
+        assertEquals(2, reader.poll(codec).getExtraData().getInt("index"));
+        assertNull(reader.poll(codec));
+    }
+
+    @Test
+    public void fullRingRefusesMessagesUntilTheReaderCatchesUp() throws Exception {
+        File file = folder.newFile("ring");
+        MappedRing writer = MappedRing.open(file, 128);
+        MappedRing reader = MappedRing.open(file, 128);
+        int written = 0;
+        while (writer.offer(message(written, 0), codec)) {
+            written++;
+        }
+        assertTrue(written > 1);
+
+        assertEquals(0, reader.poll(codec).getExtraData().getInt("index"));
+        assertTrue(writer.offer(message(written, 0), codec));
+        assertFalse(writer.offer(message(written + 1, 0), codec));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageLargerThanTheRingIsRejected() throws Exception {
+        MappedRing ring = MappedRing.open(folder.newFile("ring"), 64);
+
+        ring.offer(message(0, 40), codec);
+    }
+
+    @Test
+    public void reopenedRingKeepsUnreadMessages() throws Exception {
+        File file = folder.newFile("ring");
+        assertTrue(MappedRing.open(file, 256).offer(message(7, 3), codec));
+
+        assertEquals(7, MappedRing.open(file, 256).poll(codec).getExtraData().getInt("index"));
+    }
+
+    @Test(expected = IOException.class)
+    public void ringOfAnotherCapacityIsRejected() throws Exception {
+        File file = folder.newFile("ring");
+        MappedRing.open(file, 256);
+
+        MappedRing.open(file, 512);
+    }
+
+    private static Message message(int index, int payloadLength) {
+        Message message = Message.forDestination("ring");
+        message.getExtraData().putInt("index", index);
+        message.getExtraData().putString("payload", payload(payloadLength));
+        return message;
+    }
+
+    private static String payload(int length) {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        return payload.toString();
+    }
+}
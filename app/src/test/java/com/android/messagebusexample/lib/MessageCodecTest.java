@@ -0,0 +1,199 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageCodecTest {
+    private static final String SURROGATE_PAIRS = "smile \uD83D\uDE00 and clef \uD834\uDD1E";
+    private static final String MULTI_BYTE = "caf\u00E9 \u20AC \u65E5\u672C";
+
+    private final MessageCodec codec = MessageCodec.create(Arrays.asList("orders", "created", "status", "shipped"));
+
+    @Test
+    public void roundTripsEveryValueType() {
+        Message message = Message.forDestinationAndAction("orders", "created");
+        message.setPriority(Priority.HIGH);
+        MessageData data = message.getExtraData();
+        data.putBoolean("flag", true);
+        data.putBoolean("other flag", false);
+        data.putInt("int", -123456);
+        data.putInt("max int", Integer.MAX_VALUE);
+        data.putLong("min long", Long.MIN_VALUE);
+        data.putFloat("float", -1.5f);
+        data.putFloat("nan", Float.NaN);
+        data.putDouble("double", Math.PI);
+        data.putString("empty", "");
+        data.putString("surrogates", SURROGATE_PAIRS);
+        data.putString("multi byte", MULTI_BYTE);
+        data.putString("lone surrogate", "a\uD800b");
+        data.putString("null", null);
+        data.put("serializable", new Date(1234567890L));
+
+        for (boolean lazy : new boolean[]{true, false}) {
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(4096), ByteBuffer.allocateDirect(4096)}) {
+                Message decoded = roundTrip(message, buffer, lazy);
+
+                assertEquals("orders", decoded.getDestination());
+                assertEquals("created", decoded.getAction());
+                assertEquals(Priority.HIGH, decoded.getPriority());
+                assertEquals(data, decoded.getExtraData());
+                assertEquals(decoded.getExtraData(), data);
+                assertEquals(SURROGATE_PAIRS, decoded.getExtraData().getString("surrogates"));
+                assertNull(decoded.getExtraData().getString("null"));
+                assertTrue(decoded.getExtraData().containsKey("null"));
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsNestedLists() {
+        ArrayList<Object> inner = new ArrayList<Object>(Arrays.asList("shipped", SURROGATE_PAIRS, null, 7L));
+        ArrayList<Object> list = new ArrayList<Object>(Arrays.asList(1, "two", 3.0, true, inner,
+                new ArrayList<Object>()));
+        Message message = Message.forDestination("orders");
+        message.getExtraData().putArrayList("list", list);
+
+        for (boolean lazy : new boolean[]{true, false}) {
+            Message decoded = roundTrip(message, ByteBuffer.allocate(1024), lazy);
+
+            assertEquals(list, decoded.getExtraData().getArrayList("list"));
+        }
+    }
+
+    @Test
+    public void dictionaryStringsAreWrittenAsIndexes() {
+        Message message = Message.forDestinationAndAction("orders", "created");
+        message.getExtraData().putString("status", "shipped");
+        ByteBuffer withDictionary = ByteBuffer.allocate(256);
+        ByteBuffer withoutDictionary = ByteBuffer.allocate(256);
+
+        codec.encode(message, withDictionary);
+        MessageCodec.create().encode(message, withoutDictionary);
+
+        // version, flags, size, value type and a byte per dictionary string
+        assertEquals(8, withDictionary.position());
+        assertTrue(withoutDictionary.position() > withDictionary.position());
+        withDictionary.flip();
+        Message decoded = codec.decode(withDictionary);
+        assertEquals("orders", decoded.getDestination());
+        assertEquals("created", decoded.getAction());
+        assertEquals("shipped", decoded.getExtraData().getString("status"));
+    }
+
+    @Test
+    public void builtInKeysAreInEveryDictionary() {
+        Message message = Message.forDestination("orders");
+        message.getExtraData().putLong(MessageDataConstants.CORRELATION_ID, 42L);
+
+        Message decoded = roundTrip(message, ByteBuffer.allocate(256), false);
+
+        assertEquals(42L, decoded.getExtraData().getLong(MessageDataConstants.CORRELATION_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDictionaryIndexIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        codec.encode(Message.forDestination("shipped"), buffer);
+        buffer.flip();
+
+        MessageCodec.create().decode(buffer);
+    }
+
+    @Test
+    public void consecutiveMessagesAreDecodedFromOneBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (int i = 0; i < 3; i++) {
+            Message message = Message.forDestination("destination-" + i);
+            message.getExtraData().putString("value", SURROGATE_PAIRS + i);
+            codec.encode(message, buffer);
+        }
+        buffer.flip();
+
+        for (int i = 0; i < 3; i++) {
+            Message decoded = codec.decode(buffer);
+            assertEquals("destination-" + i, decoded.getDestination());
+            assertEquals(SURROGATE_PAIRS + i, decoded.getExtraData().getString("value"));
+        }
+        assertEquals(buffer.limit(), buffer.position());
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void truncatedMessageIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Message message = Message.forDestination("orders");
+        message.getExtraData().putDouble("value", Math.PI);
+        codec.encode(message, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+
+        codec.decode(buffer, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringCutOffWithinItsLengthIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Message message = Message.forDestination("orders");
+        message.getExtraData().putString("value", MULTI_BYTE);
+        codec.encode(message, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+
+        codec.decode(buffer, false);
+    }
+
+    @Test
+    public void corruptLengthsAreRejectedBeforeAllocating() {
+        // version, flags, destination "orders" from the dictionary and the extra data size
+        assertCorruptLengthRejected(new byte[]{1, 2, 0x05, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F});
+        // size 1, key "status" from the dictionary, serializable of Integer.MAX_VALUE bytes
+        assertCorruptLengthRejected(new byte[]{1, 2, 0x05, 1, 0x09, 9, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        // destination string of 2^30 UTF-8 bytes
+        assertCorruptLengthRejected(new byte[]{1, 2, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08});
+    }
+
+    private void assertCorruptLengthRejected(byte[] bytes) {
+        for (boolean lazy : new boolean[]{false, true}) {
+            try {
+                codec.decode(ByteBuffer.wrap(bytes), lazy);
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("exceeds"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFormatVersionIsRejected() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{99, 0, 0, 0});
+
+        codec.decode(buffer);
+    }
+
+    @Test
+    public void emptyExtraDataRoundTrips() {
+        Message message = Message.forDestination("orders");
+        Message decoded = roundTrip(message, ByteBuffer.allocate(16), true);
+
+        assertEquals(message, decoded);
+        assertEquals(Collections.emptyMap(), decoded.getExtraData());
+    }
+
+    private Message roundTrip(Message message, ByteBuffer buffer, boolean lazy) {
+        codec.encode(message, buffer);
+        buffer.flip();
+        Message decoded = codec.decode(buffer, lazy);
+        assertEquals(buffer.limit(), buffer.position());
+        return decoded;
+    }
+}
@@ -0,0 +1,130 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageDataTest {
+    // "Aa" and "BB" have the same hash code, so do all their concatenations
+    private static final String[] COLLIDING_KEYS = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+
+    @Test
+    public void behavesLikeHashMapUnderRandomPutsAndRemoves() {
+        // few keys keep the table small, so probe sequences wrap around its end, many keys make it resize
+        assertBehavesLikeHashMap(6, new Random(42L));
+        assertBehavesLikeHashMap(40, new Random(43L));
+    }
+
+    @Test
+    public void removalKeepsTheRestOfTheProbeSequenceReachable() {
+        MessageData data = new MessageData();
+        for (int i = 0; i < COLLIDING_KEYS.length; i++) {
+            data.putInt(COLLIDING_KEYS[i], i);
+        }
+
+        data.remove("AaAa");
+        data.remove("Aa");
+
+        assertEquals(4, data.size());
+        assertFalse(data.containsKey("Aa"));
+        assertEquals(1, data.getInt("BB"));
+        assertEquals(3, data.getInt("AaBB"));
+        assertEquals(4, data.getInt("BBAa"));
+        assertEquals(5, data.getInt("BBBB"));
+    }
+
+    @Test
+    public void typedGettersOnlyReturnValuesOfTheirType() {
+        MessageData data = new MessageData();
+        data.putInt("int", 7);
+        data.put("boxed long", 8L);
+        data.putString("string", "value");
+
+        assertEquals(7, data.getInt("int"));
+        assertEquals(-1L, data.getLong("int", -1L));
+        assertEquals(8L, data.getLong("boxed long"));
+        assertNull(data.getString("int"));
+        assertEquals(0, data.getInt("string"));
+        assertEquals(Integer.valueOf(7), data.get("int"));
+    }
+
+    @Test
+    public void entriesRemovedWhileIteratingAreGone() {
+        MessageData data = new MessageData(2);
+        for (int i = 0; i < 20; i++) {
+            data.putInt("key-" + i, i);
+        }
+
+        for (Iterator<Map.Entry<String, Object>> iterator = data.entrySet().iterator(); iterator.hasNext(); ) {
+            if ((Integer) iterator.next().getValue() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(10, data.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i % 2 != 0, data.containsKey("key-" + i));
+        }
+        assertTrue(data.slotCount() >= 32);
+    }
+
+    private static void assertBehavesLikeHashMap(int keyCount, Random random) {
+        List<String> keys = new ArrayList<>();
+        for (String key : COLLIDING_KEYS) {
+            keys.add(key);
+        }
+        for (int i = 0; i < keyCount; i++) {
+            keys.add("key-" + i);
+        }
+
+        MessageData data = new MessageData();
+        Map<String, Object> expected = new HashMap<>();
+        for (int operation = 0; operation < 20000; operation++) {
+            // a copy of the key, so lookups can't rely on the same instance
+            String key = new String(keys.get(random.nextInt(keys.size())));
+            if (random.nextInt(3) == 0) {
+                assertEquals(key, expected.remove(key), data.remove(key));
+            } else {
+                Object value = randomValue(random);
+                assertEquals(key, expected.put(key, value), data.put(key, value));
+            }
+
+            assertEquals(expected.size(), data.size());
+            for (String lookup : keys) {
+                assertEquals(lookup, expected.get(lookup), data.get(lookup));
+                assertEquals(lookup, expected.containsKey(lookup), data.containsKey(lookup));
+            }
+        }
+        assertEquals(expected, data);
+        assertEquals(expected.hashCode(), data.hashCode());
+    }
+
+    private static Object randomValue(Random random) {
+        switch (random.nextInt(7)) {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return random.nextLong();
+            case 2:
+                return random.nextBoolean();
+            case 3:
+                return random.nextDouble();
+            case 4:
+                return random.nextFloat();
+            case 5:
+                return null;
+            default:
+                return "value-" + random.nextInt(100);
+        }
+    }
+}
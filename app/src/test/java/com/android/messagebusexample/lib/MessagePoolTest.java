@@ -0,0 +1,99 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+public class MessagePoolTest {
+    private static final int WARM_UP_ROUNDS = 200_000;
+    private static final int MEASURED_ROUNDS = 100_000;
+
+    @Test
+    public void synchronousSendsDontAllocateInSteadyState() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        MessageBus bus = new MessageBus(Runnable::run, MessagePool.create());
+        final long[] sum = new long[1];
+        bus.registerListener("values", message -> sum[0] += message.getExtraData().getInt("value"));
+        bus.registerListener("signals", message -> sum[0]++);
+        bus.registerListener("signals", message -> sum[0]++);
+        Topic topic = bus.topic("values");
+
+        sendRounds(bus, topic, WARM_UP_ROUNDS);
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        sendRounds(bus, topic, MEASURED_ROUNDS);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals("bytes allocated by " + 3 * MEASURED_ROUNDS + " sends", 0L, allocated);
+    }
+
+    private static void sendRounds(MessageBus bus, Topic topic, int rounds) throws MessageBusException {
+        for (int i = 0; i < rounds; i++) {
+            Message message = bus.obtainMessage("values");
+            message.getExtraData().putInt("value", i);
+            bus.sendMessage(message);
+            bus.sendMessage("signals");
+            topic.send();
+        }
+    }
+
+    @Test
+    public void deliveredMessagesAreReused() throws Exception {
+        MessageBus bus = new MessageBus(Runnable::run, MessagePool.create());
+        bus.registerListener("destination", message -> {
+        });
+
+        Message message = bus.obtainMessage("destination");
+        message.getExtraData().putString("key", "value");
+        bus.sendMessage(message);
+
+        Message reused = bus.obtainMessage("other");
+        assertSame(message, reused);
+        assertEquals("other", reused.getDestination());
+        assertEquals(0, reused.getExtraData().size());
+    }
+
+    @Test
+    public void retainedMessageIsRecycledByTheLastRelease() throws Exception {
+        MessageBus bus = new MessageBus(Runnable::run, MessagePool.debug());
+        final Message[] kept = new Message[1];
+        bus.registerListener("destination", message -> {
+            message.retain();
+            kept[0] = message;
+        });
+
+        bus.sendMessage("destination");
+        assertEquals("destination", kept[0].getDestination());
+
+        kept[0].release();
+        assertSame(kept[0], bus.obtainMessage("destination"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void debugPoolDetectsUseAfterRecycle() throws Exception {
+        MessageBus bus = new MessageBus(Runnable::run, MessagePool.debug());
+        final Message[] kept = new Message[1];
+        bus.registerListener("destination", message -> kept[0] = message);
+
+        bus.sendMessage("destination");
+        kept[0].getDestination();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void debugPoolDetectsUnbalancedRelease() {
+        MessagePool pool = MessagePool.debug();
+        Message message = pool.obtain("destination", null);
+        message.release();
+        message.release();
+    }
+}
@@ -0,0 +1,118 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PriorityDispatcherTest {
+    private final CountDownLatch workerBlocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+    private MessageBus bus;
+
+    private void start(long aging, TimeUnit unit) throws InterruptedException {
+        bus = new MessageBus(AsyncDispatchers.prioritized(1, aging, unit,
+                AsyncDispatchers.daemonThreadFactory("priority-test-")));
+        bus.registerListener("blocker", message -> {
+            workerBlocked.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        bus.registerListener("destination", message -> delivered.add(message.getExtraData().getString("name")));
+
+        bus.sendMessageAsync("blocker", Priority.HIGHER);
+        assertTrue(workerBlocked.await(10, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        if (bus != null) {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void higherPrioritiesGoFirstAndEqualOnesInSendOrder() throws Exception {
+        start(1L, TimeUnit.HOURS);
+
+        send("low", Priority.LOW);
+        send("normal-1", Priority.NORMAL);
+        send("high", Priority.HIGH);
+        send("normal-2", Priority.NORMAL);
+        send("higher", Priority.HIGHER);
+        send("verification", Priority.VERIFICATION);
+
+        assertDelivered("higher", "high", "normal-1", "normal-2", "low", "verification");
+    }
+
+    @Test
+    public void agedMessagesOvertakeNewerHigherPriorityOnes() throws Exception {
+        start(1L, TimeUnit.MILLISECONDS);
+
+        send("low", Priority.LOW);
+        Thread.sleep(50);
+        send("high", Priority.HIGH);
+        send("higher", Priority.HIGHER);
+
+        assertDelivered("higher", "low", "high");
+    }
+
+    @Test
+    public void sendPriorityOverridesTheMessagePriorityWithoutChangingIt() throws Exception {
+        start(1L, TimeUnit.HOURS);
+
+        send("normal", Priority.NORMAL);
+        Message overridden = Message.forDestination("destination");
+        overridden.getExtraData().putString("name", "overridden");
+        overridden.setPriority(Priority.LOW);
+        bus.sendMessageAsync(overridden, Priority.HIGH);
+        Message own = Message.forDestination("destination");
+        own.getExtraData().putString("name", "own");
+        own.setPriority(Priority.HIGHER);
+        bus.sendMessageAsync(own);
+
+        assertEquals(Priority.LOW, overridden.getPriority());
+        assertDelivered("own", "overridden", "normal");
+    }
+
+    @Test
+    public void workerSurvivesErrorsThrownByListeners() throws Exception {
+        start(1L, TimeUnit.HOURS);
+        bus.registerListener("error", message -> {
+            throw new AssertionError("listener error");
+        });
+
+        bus.sendMessageAsync("error", Priority.HIGHER);
+        send("after error", Priority.NORMAL);
+
+        assertDelivered("after error");
+    }
+
+    private void send(String name, Priority priority) {
+        Message message = Message.forDestination("destination");
+        message.getExtraData().putString("name", name);
+        bus.sendMessageAsync(message, priority);
+    }
+
+    private void assertDelivered(String... names) throws InterruptedException {
+        unblock.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (delivered.size() < names.length && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList(names), delivered);
+    }
+}
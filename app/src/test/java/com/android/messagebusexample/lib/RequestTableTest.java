@@ -0,0 +1,82 @@
+package com.android.messagebusexample.lib;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestTableTest {
+    private final MessageBus bus = new MessageBus(Runnable::run);
+
+    @After
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    @Test
+    public void replyCompletesTheRequestOnce() throws Exception {
+        final AtomicReference<Boolean> secondReply = new AtomicReference<>();
+        bus.registerListener("prices", request -> {
+            Message reply = Message.forDestination("prices");
+            reply.getExtraData().putInt("price", request.getExtraData().getInt("item") * 10);
+            assertTrue(bus.reply(request, reply));
+            secondReply.set(bus.reply(request, Message.forDestination("prices")));
+        });
+
+        Message request = Message.forDestination("prices");
+        request.getExtraData().putInt("item", 4);
+        Message reply = bus.request(request, 10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+
+        assertEquals(40, reply.getExtraData().getInt("price"));
+        long correlationId = request.getExtraData().getLong(MessageDataConstants.CORRELATION_ID);
+        assertNotEquals(0L, correlationId);
+        assertEquals(correlationId, reply.getExtraData().getLong(MessageDataConstants.CORRELATION_ID));
+        assertFalse(secondReply.get());
+    }
+
+    @Test
+    public void requestWithoutReplyTimesOut() throws Exception {
+        final AtomicReference<Message> unanswered = new AtomicReference<>();
+        bus.registerListener("prices", unanswered::set);
+
+        ListenableFuture<Message> reply = bus.request(Message.forDestination("prices"), 50, TimeUnit.MILLISECONDS);
+
+        assertSame(TimeoutException.class, failureOf(reply).getClass());
+        assertFalse(bus.reply(unanswered.get(), Message.forDestination("prices")));
+    }
+
+    @Test
+    public void requestWithoutListenersFailsRightAway() throws Exception {
+        ListenableFuture<Message> reply = bus.request(Message.forDestination("prices"), 10, TimeUnit.SECONDS);
+
+        assertTrue(reply.isDone());
+        assertSame(MessageBusException.class, failureOf(reply).getClass());
+    }
+
+    @Test
+    public void messageWhichIsNoRequestCantBeRepliedTo() {
+        assertFalse(bus.reply(Message.forDestination("prices"), Message.forDestination("prices")));
+    }
+
+    private static Throwable failureOf(ListenableFuture<Message> reply) throws Exception {
+        try {
+            reply.get(10, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferDispatcherTest {
+    private static final int MESSAGE_COUNT = 10_000;
+
+    @Test
+    public void singleConsumerDeliversInSendOrder() throws Exception {
+        MessageBus bus = new MessageBus(AsyncDispatchers.ringBuffer(64, 1, WaitStrategy.YIELD));
+        final AtomicInteger expected = new AtomicInteger();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final CountDownLatch delivered = new CountDownLatch(MESSAGE_COUNT);
+        bus.registerListener("destination", message -> {
+            if (message.getExtraData().getInt("index") != expected.getAndIncrement()) {
+                outOfOrder.incrementAndGet();
+            }
+            delivered.countDown();
+        });
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            Message message = Message.forDestination("destination");
+            message.getExtraData().putInt("index", i);
+            bus.sendMessageAsync(message);
+        }
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(0, outOfOrder.get());
+        bus.shutdown();
+    }
+
+    @Test
+    public void producerWaitsWhileTheBufferIsFull() throws Exception {
+        final MessageBus bus = new MessageBus(AsyncDispatchers.ringBuffer(4, 1, WaitStrategy.YIELD));
+        final CountDownLatch consumerBlocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final AtomicInteger delivered = new AtomicInteger();
+        bus.registerListener("destination", message -> {
+            consumerBlocked.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        });
+
+        final AtomicInteger sent = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 20; i++) {
+                bus.sendMessageAsync("destination");
+                sent.incrementAndGet();
+            }
+        });
+        producer.start();
+
+        assertTrue(consumerBlocked.await(10, TimeUnit.SECONDS));
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        // the slot being delivered is only freed once the delivery returns
+        assertEquals(4, sent.get());
+
+        unblock.countDown();
+        producer.join(10_000);
+        awaitCount(delivered, 20);
+        bus.shutdown();
+    }
+
+    @Test
+    public void listenerSendingIntoTheFullBufferOfItsConsumerDoesntDeadlock() throws Exception {
+        final MessageBus bus = new MessageBus(AsyncDispatchers.ringBuffer(4, 1, WaitStrategy.YIELD));
+        final AtomicInteger leaves = new AtomicInteger();
+        bus.registerListener("fan-out", message -> {
+            for (int i = 0; i < 50; i++) {
+                bus.sendMessageAsync("leaf");
+            }
+        });
+        bus.registerListener("leaf", message -> leaves.incrementAndGet());
+
+        bus.sendMessageAsync("fan-out");
+        bus.sendMessageAsync("fan-out");
+
+        awaitCount(leaves, 100);
+        bus.shutdown();
+    }
+
+    @Test
+    public void consumerSurvivesErrorsThrownByListeners() throws Exception {
+        MessageBus bus = new MessageBus(AsyncDispatchers.ringBuffer(4, 1, WaitStrategy.YIELD));
+        final AtomicInteger delivered = new AtomicInteger();
+        bus.registerListener("error", message -> {
+            throw new AssertionError("listener error");
+        });
+        bus.registerListener("destination", message -> delivered.incrementAndGet());
+
+        bus.sendMessageAsync("error");
+        bus.sendMessageAsync("destination");
+
+        awaitCount(delivered, 1);
+        bus.shutdown();
+    }
+
+    static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, count.get());
+    }
+}
@@ -0,0 +1,114 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StickyCacheTest {
+    private final MessageBus bus = new MessageBus(Runnable::run);
+
+    @Test
+    public void leastRecentlySentOrReplayedMessagesAreEvicted() throws Exception {
+        bus.setStickyCacheCapacity(2);
+        bus.sticky("first");
+        bus.sticky("second");
+        bus.sticky("third");
+        bus.sendMessage("first");
+        bus.sendMessage("second");
+        assertEquals(1, replayed("first").size());
+
+        bus.sendMessage("third");
+
+        assertEquals(1, replayed("first").size());
+        assertEquals(0, replayed("second").size());
+        assertEquals(1, replayed("third").size());
+    }
+
+    @Test
+    public void perActionDestinationsKeepTheLastMessageOfEveryAction() throws Exception {
+        bus.sticky("orders", true);
+        send("orders", "created", "first");
+        send("orders", "deleted", "second");
+        send("orders", "created", "third");
+
+        assertEquals(Collections.singletonList("third"), values(replayed("orders", "created")));
+        assertEquals(Collections.singletonList("second"), values(replayed("orders", "deleted")));
+        assertEquals(Collections.emptyList(), values(replayed("orders", "updated")));
+        List<String> allActions = values(replayed("orders", Message.ACTION_ANY));
+        Collections.sort(allActions);
+        assertEquals(Arrays.asList("second", "third"), allActions);
+    }
+
+    @Test
+    public void destinationsKeepOnlyTheirLastMessage() throws Exception {
+        bus.sticky("orders");
+        send("orders", "created", "first");
+        send("orders", "deleted", "second");
+
+        assertEquals(Collections.singletonList("second"), values(replayed("orders", Message.ACTION_ANY)));
+        assertEquals(Collections.singletonList("second"), values(replayed("orders", "deleted")));
+        assertEquals(Collections.emptyList(), values(replayed("orders", "created")));
+
+        bus.removeStickyMessages("orders");
+        assertEquals(Collections.emptyList(), values(replayed("orders", Message.ACTION_ANY)));
+    }
+
+    @Test
+    public void stickyMessagesAreReplayedWithoutHoldingTheBusMonitor() throws Exception {
+        bus.sticky("first");
+        bus.sticky("second");
+        bus.sendMessage("first");
+        bus.sendMessage("second");
+
+        final List<Boolean> monitorHeld = new ArrayList<>();
+        bus.registerListener(new String[]{"first", "second"}, message -> monitorHeld.add(Thread.holdsLock(bus)));
+        bus.register(new StickySubscriber(monitorHeld));
+        bus.registerListener("first", message -> monitorHeld.add(Thread.holdsLock(bus)));
+
+        assertEquals(Arrays.asList(false, false, false, false, false), monitorHeld);
+    }
+
+    private void send(String destination, String action, String value) throws MessageBusException {
+        Message message = Message.forDestinationAndAction(destination, action);
+        message.getExtraData().putString("value", value);
+        bus.sendMessage(message);
+    }
+
+    private List<Message> replayed(String destination) {
+        return replayed(destination, Message.ACTION_ANY);
+    }
+
+    private List<Message> replayed(String destination, String action) {
+        final List<Message> replayed = new ArrayList<>();
+        MessageListener listener = replayed::add;
+        bus.registerListener(destination, action, listener);
+        bus.unregisterListener(destination, action, listener);
+        return replayed;
+    }
+
+    private static List<String> values(List<Message> messages) {
+        List<String> values = new ArrayList<>();
+        for (Message message : messages) {
+            values.add(message.getExtraData().getString("value"));
+        }
+        return values;
+    }
+
+    public final class StickySubscriber {
+        private final List<Boolean> monitorHeld;
+
+        StickySubscriber(List<Boolean> monitorHeld) {
+            this.monitorHeld = monitorHeld;
+        }
+
+        @Subscribe({@To("first"), @To("second")})
+        public void onMessage() {
+            monitorHeld.add(Thread.holdsLock(bus));
+        }
+    }
+}
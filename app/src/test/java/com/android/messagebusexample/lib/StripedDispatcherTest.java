@@ -0,0 +1,107 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedDispatcherTest {
+    private static final int DESTINATION_COUNT = 8;
+    private static final int MESSAGES_PER_DESTINATION = 5_000;
+
+    @Test
+    public void messagesOfADestinationAreDeliveredInSendOrder() throws Exception {
+        final MessageBus bus = new MessageBus(AsyncDispatchers.striped(3));
+        final AtomicIntegerArray expected = new AtomicIntegerArray(DESTINATION_COUNT);
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final CountDownLatch delivered = new CountDownLatch(DESTINATION_COUNT * MESSAGES_PER_DESTINATION);
+        for (int d = 0; d < DESTINATION_COUNT; d++) {
+            final int destination = d;
+            bus.registerListener("destination-" + d, message -> {
+                if (message.getExtraData().getInt("index") != expected.getAndIncrement(destination)) {
+                    outOfOrder.incrementAndGet();
+                }
+                delivered.countDown();
+            });
+        }
+
+        // a producer per destination, so the destinations of a lane are sent to concurrently
+        Thread[] producers = new Thread[DESTINATION_COUNT];
+        for (int d = 0; d < DESTINATION_COUNT; d++) {
+            final String destination = "destination-" + d;
+            producers[d] = new Thread(() -> {
+                for (int i = 0; i < MESSAGES_PER_DESTINATION; i++) {
+                    Message message = Message.forDestination(destination);
+                    message.getExtraData().putInt("index", i);
+                    bus.sendMessageAsync(message);
+                }
+            });
+            producers[d].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(delivered.await(30, TimeUnit.SECONDS));
+        assertEquals(0, outOfOrder.get());
+        bus.shutdown();
+    }
+
+    @Test
+    public void busyDestinationDoesntHoldBackTheOthersOfItsLane() throws Exception {
+        final MessageBus bus = new MessageBus(AsyncDispatchers.striped(1, 4,
+                AsyncDispatchers.daemonThreadFactory("striped-test-")));
+        final AtomicInteger busyDelivered = new AtomicInteger();
+        final AtomicInteger busyDeliveredBeforeQuiet = new AtomicInteger(-1);
+        final CountDownLatch quietDelivered = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        bus.registerListener("busy", message -> {
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            busyDelivered.incrementAndGet();
+        });
+        bus.registerListener("quiet", message -> {
+            busyDeliveredBeforeQuiet.set(busyDelivered.get());
+            quietDelivered.countDown();
+        });
+
+        for (int i = 0; i < 100; i++) {
+            bus.sendMessageAsync("busy");
+        }
+        bus.sendMessageAsync("quiet");
+        unblock.countDown();
+
+        assertTrue(quietDelivered.await(10, TimeUnit.SECONDS));
+        // the busy destination got at most a quantum before the quiet one had its turn
+        assertTrue("busy deliveries before quiet: " + busyDeliveredBeforeQuiet.get(),
+                busyDeliveredBeforeQuiet.get() <= 4);
+        bus.shutdown();
+    }
+
+    @Test
+    public void laneSurvivesErrorsThrownByListeners() throws Exception {
+        MessageBus bus = new MessageBus(AsyncDispatchers.striped(1));
+        final AtomicInteger delivered = new AtomicInteger();
+        bus.registerListener("error", message -> {
+            throw new AssertionError("listener error");
+        });
+        bus.registerListener("destination", message -> delivered.incrementAndGet());
+
+        bus.sendMessageAsync("error");
+        bus.sendMessageAsync("destination");
+        bus.sendMessageAsync("error");
+        bus.sendMessageAsync("error");
+        bus.sendMessageAsync("destination");
+
+        RingBufferDispatcherTest.awaitCount(delivered, 2);
+        bus.shutdown();
+    }
+}
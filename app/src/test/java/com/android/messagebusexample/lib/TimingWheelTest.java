@@ -0,0 +1,143 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+    // 256 ticks take 2.56 ms and 65536 ticks 655 ms, so the test reaches the third level in well under a second
+    private static final long TICK_MICROS = 10L;
+
+    private final List<RecordingTimeout> expired = Collections.synchronizedList(new ArrayList<RecordingTimeout>());
+    private final TimingWheel wheel = new TimingWheel(TICK_MICROS, TimeUnit.MICROSECONDS,
+            AsyncDispatchers.daemonThreadFactory("wheel-test-"), timeouts -> {
+                for (TimingWheel.Timeout timeout : timeouts) {
+                    ((RecordingTimeout) timeout).expiredAtNanos = System.nanoTime();
+                    expired.add((RecordingTimeout) timeout);
+                }
+            });
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void timeoutsCascadeDownTheLevelsAndExpireInDeadlineOrder() throws Exception {
+        // within the first level, one and two levels up, across several turns of a level
+        long[] delaysMicros = {50L, 2_000L, 3_000L, 25_000L, 120_000L, 700_000L, 60L, 900_000L};
+        List<RecordingTimeout> timeouts = new ArrayList<>();
+        for (long delay : delaysMicros) {
+            RecordingTimeout timeout = new RecordingTimeout(delay);
+            timeouts.add(timeout);
+            wheel.schedule(timeout, delay, TimeUnit.MICROSECONDS);
+        }
+
+        awaitExpired(timeouts.size());
+
+        long previousDelay = -1L;
+        for (RecordingTimeout timeout : expired) {
+            assertTrue(timeout.isExpired());
+            assertTrue("expired early: " + timeout, timeout.expiredAtNanos - timeout.scheduledAtNanos
+                    >= TimeUnit.MICROSECONDS.toNanos(timeout.delayMicros));
+            assertTrue("expired out of order: " + expired, timeout.delayMicros > previousDelay);
+            previousDelay = timeout.delayMicros;
+        }
+    }
+
+    @Test
+    public void timeoutsOfTheSameTickExpireAsOneBatch() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        TimingWheel batchingWheel = new TimingWheel(50L, TimeUnit.MILLISECONDS,
+                AsyncDispatchers.daemonThreadFactory("wheel-test-"), timeouts -> {
+                    batches.incrementAndGet();
+                    if (timeouts.size() == 10) {
+                        done.countDown();
+                    }
+                });
+        try {
+            for (int i = 0; i < 10; i++) {
+                batchingWheel.schedule(new RecordingTimeout(0L), 100L, TimeUnit.MILLISECONDS);
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, batches.get());
+        } finally {
+            batchingWheel.stop();
+        }
+    }
+
+    @Test
+    public void cancelledTimeoutsDontExpire() throws Exception {
+        RecordingTimeout cancelled = new RecordingTimeout(200_000L);
+        RecordingTimeout kept = new RecordingTimeout(300_000L);
+        wheel.schedule(cancelled, cancelled.delayMicros, TimeUnit.MICROSECONDS);
+        wheel.schedule(kept, kept.delayMicros, TimeUnit.MICROSECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        awaitExpired(1);
+        Thread.sleep(50);
+
+        assertEquals(Collections.singletonList(kept), expired);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(1, cancelled.cancelledCount.get());
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    public void stopCancelsThePendingTimeouts() throws Exception {
+        RecordingTimeout pending = new RecordingTimeout(10_000_000L);
+        wheel.schedule(pending, pending.delayMicros, TimeUnit.MICROSECONDS);
+
+        wheel.stop();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!pending.isCancelled() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(pending.isCancelled());
+        assertEquals(1, pending.cancelledCount.get());
+    }
+
+    private void awaitExpired(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (expired.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, expired.size());
+    }
+
+    private static final class RecordingTimeout extends TimingWheel.Timeout {
+        final long delayMicros;
+        final long scheduledAtNanos = System.nanoTime();
+        final AtomicInteger cancelledCount = new AtomicInteger();
+        volatile long expiredAtNanos;
+
+        RecordingTimeout(long delayMicros) {
+            this.delayMicros = delayMicros;
+        }
+
+        @Override
+        void cancelled() {
+            cancelledCount.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout{delayMicros=" + delayMicros + ", tookMicros="
+                    + TimeUnit.NANOSECONDS.toMicros(expiredAtNanos - scheduledAtNanos) + '}';
+        }
+    }
+}
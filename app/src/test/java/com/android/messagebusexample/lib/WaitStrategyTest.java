@@ -0,0 +1,39 @@
+package com.android.messagebusexample.lib;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WaitStrategyTest {
+    @Test
+    public void parkBacksOffToMillisecondParks() {
+        int counter = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 220; i++) {
+            counter = WaitStrategy.PARK.idle(counter);
+        }
+        // spinning and yielding are quick, the doubling parks add up to about 16 milliseconds
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(8));
+
+        int wakeUps = 0;
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < end) {
+            counter = WaitStrategy.PARK.idle(counter);
+            wakeUps++;
+        }
+        assertTrue("wake-ups in 200 ms: " + wakeUps, wakeUps <= 50);
+    }
+
+    @Test
+    public void parkCounterStopsGrowingAtTheLongestPark() {
+        int counter = 0;
+        for (int i = 0; i < 220; i++) {
+            counter = WaitStrategy.PARK.idle(counter);
+        }
+
+        assertEquals(counter, WaitStrategy.PARK.idle(counter));
+    }
+}
@@ -0,0 +1,343 @@
+package com.android.messagebusexample.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a SubscriberIndex with a direct call invoker for every {@code @Subscribe} method, so the MessageBus
+ * registers subscribers without scanning them with reflection. The generated class name is taken from the
+ * {@value #OPTION_INDEX} option and defaults to {@value #DEFAULT_INDEX} in the package of the first subscriber.
+ */
+public class SubscriberIndexProcessor extends AbstractProcessor {
+    static final String OPTION_INDEX = "messageBusIndex";
+    static final String DEFAULT_INDEX = "MessageBusIndex";
+
+    private static final String LIB_PACKAGE = "com.android.messagebusexample.lib";
+    private static final String SUBSCRIBE = LIB_PACKAGE + ".Subscribe";
+    private static final String SUBSCRIBER = LIB_PACKAGE + ".Subscriber";
+    private static final String MANUAL_SUBSCRIPTION = LIB_PACKAGE + ".ManualSubscription";
+    private static final String MESSAGE = LIB_PACKAGE + ".Message";
+    private static final String DEFAULT_PRIORITY = "NORMAL";
+
+    private final Map<TypeElement, List<ExecutableElement>> subscriberMethods = new LinkedHashMap<>();
+    private boolean indexWritten;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> annotationTypes = new HashSet<>();
+        annotationTypes.add(SUBSCRIBE);
+        annotationTypes.add(SUBSCRIBER);
+        return annotationTypes;
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(OPTION_INDEX);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * The index is written in the first round with subscribers, so it's compiled along with the other sources instead
+     * of being created in the last round. Subscribers generated by other processors in later rounds can't be added to
+     * it anymore, they are registered with reflection.
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            String annotationName = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (SUBSCRIBE.equals(annotationName) && element.getKind() == ElementKind.METHOD) {
+                    collectSubscriber((TypeElement) element.getEnclosingElement());
+                } else if (SUBSCRIBER.equals(annotationName) && element instanceof TypeElement) {
+                    collectSubscriber((TypeElement) element);
+                }
+            }
+        }
+
+        if (!roundEnv.processingOver() && !indexWritten && !subscriberMethods.isEmpty()) {
+            writeIndex();
+            indexWritten = true;
+        }
+        return false;
+    }
+
+    private void collectSubscriber(TypeElement subscriberType) {
+        if (subscriberMethods.containsKey(subscriberType)) {
+            return;
+        }
+        if (indexWritten) {
+            messager().printMessage(Diagnostic.Kind.WARNING,
+                    "Subscriber generated after the index was written is registered with reflection", subscriberType);
+            return;
+        }
+
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (TypeElement type = subscriberType; type != null; type = superclassOf(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (findAnnotation(method, SUBSCRIBE) != null && !isOverridden(method, methods, subscriberType)
+                        && checkSubscriberMethod(method)) {
+                    methods.add(method);
+                }
+            }
+        }
+
+        if (methods.isEmpty()) {
+            messager().printMessage(Diagnostic.Kind.WARNING, "No @Subscribe methods found", subscriberType);
+        } else if (checkSubscriberType(subscriberType)) {
+            subscriberMethods.put(subscriberType, methods);
+        }
+    }
+
+    /**
+     * @return true if a method collected from a subclass overrides the method, it's only indexed once as declared by
+     * the subclass
+     */
+    private boolean isOverridden(ExecutableElement method, List<ExecutableElement> subclassMethods,
+                                 TypeElement subscriberType) {
+        for (ExecutableElement subclassMethod : subclassMethods) {
+            if (processingEnv.getElementUtils().overrides(subclassMethod, method, subscriberType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean checkSubscriberType(TypeElement subscriberType) {
+        for (Element element = subscriberType; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                messager().printMessage(Diagnostic.Kind.ERROR, "Subscriber classes can't be private", subscriberType);
+                return false;
+            }
+            if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+                messager().printMessage(Diagnostic.Kind.ERROR, "Subscriber classes must be public to be indexed", subscriberType);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean checkSubscriberMethod(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.STATIC) || !modifiers.contains(Modifier.PUBLIC)) {
+            messager().printMessage(Diagnostic.Kind.ERROR, "@Subscribe methods must be public instance methods", method);
+            return false;
+        }
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (parameters.size() > 1 || (parameters.size() == 1 && !isMessageParameter(parameters.get(0).asType()))) {
+            messager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Subscribe methods must have no parameters or a single Message parameter", method);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isMessageParameter(TypeMirror type) {
+        TypeElement message = processingEnv.getElementUtils().getTypeElement(MESSAGE);
+        return message != null && processingEnv.getTypeUtils().isAssignable(message.asType(), type);
+    }
+
+    private void writeIndex() {
+        String indexName = processingEnv.getOptions().get(OPTION_INDEX);
+        if (indexName == null) {
+            TypeElement firstSubscriber = subscriberMethods.keySet().iterator().next();
+            PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(firstSubscriber);
+            indexName = packageElement.isUnnamed() ? DEFAULT_INDEX : packageElement.getQualifiedName() + "." + DEFAULT_INDEX;
+        }
+
+        int lastDot = indexName.lastIndexOf('.');
+        String packageName = lastDot > 0 ? indexName.substring(0, lastDot) : "";
+        String simpleName = indexName.substring(lastDot + 1);
+
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(indexName,
+                    subscriberMethods.keySet().toArray(new Element[0]));
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(generateIndex(packageName, simpleName));
+            }
+        } catch (IOException e) {
+            messager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + indexName + ": " + e);
+        }
+    }
+
+    private String generateIndex(String packageName, String simpleName) {
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import ").append(LIB_PACKAGE).append(".Message;\n")
+                .append("import ").append(LIB_PACKAGE).append(".Priority;\n")
+                .append("import ").append(LIB_PACKAGE).append(".SubscriberIndex;\n")
+                .append("import ").append(LIB_PACKAGE).append(".SubscriberMethod;\n")
+                .append("import ").append(LIB_PACKAGE).append(".SubscriberMethodInvoker;\n\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n * Generated by ").append(getClass().getName()).append(", do not edit.\n */\n")
+                .append("public final class ").append(simpleName).append(" implements SubscriberIndex {\n")
+                .append("    private static final Map<Class<?>, SubscriberMethod[]> SUBSCRIBER_METHODS = new HashMap<>();\n")
+                .append("    private static final Class<?>[] SUBSCRIBER_CLASSES_REGISTERED_ON_START = {\n");
+        for (TypeElement subscriberType : subscriberMethods.keySet()) {
+            if (findAnnotation(subscriberType, MANUAL_SUBSCRIPTION) == null) {
+                source.append("            ").append(subscriberType.getQualifiedName()).append(".class,\n");
+            }
+        }
+        source.append("    };\n\n")
+                .append("    static {\n");
+
+        int invokerIndex = 0;
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : subscriberMethods.entrySet()) {
+            String subscriberClass = entry.getKey().getQualifiedName().toString();
+            List<String> subscriberMethodExpressions = new ArrayList<>();
+            for (ExecutableElement method : entry.getValue()) {
+                String invoker = "invoker" + invokerIndex++;
+                String methodName = method.getSimpleName().toString();
+                String argument = method.getParameters().isEmpty() ? "" : "message";
+                source.append("        SubscriberMethodInvoker ").append(invoker).append(" = new SubscriberMethodInvoker() {\n")
+                        .append("            @Override\n")
+                        .append("            public void invoke(Object subscriber, Message message) throws Exception {\n")
+                        .append("                ((").append(subscriberClass).append(") subscriber).")
+                        .append(methodName).append("(").append(argument).append(");\n")
+                        .append("            }\n")
+                        .append("        };\n");
+
+                for (AnnotationMirror to : toAnnotations(method)) {
+                    subscriberMethodExpressions.add("new SubscriberMethod("
+                            + stringLiteral(methodName) + ", "
+                            + stringLiteral(annotationValue(to, "value", "")) + ", "
+                            + stringLiteral(annotationValue(to, "action", "")) + ", "
+                            + "Priority." + annotationValue(to, "withPriority", DEFAULT_PRIORITY) + ", "
+                            + invoker + ")");
+                }
+            }
+
+            source.append("        SUBSCRIBER_METHODS.put(").append(subscriberClass).append(".class, new SubscriberMethod[]{\n");
+            for (String expression : subscriberMethodExpressions) {
+                source.append("                ").append(expression).append(",\n");
+            }
+            source.append("        });\n");
+        }
+
+        source.append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public SubscriberMethod[] getSubscriberMethods(Class<?> subscriberClass) {\n")
+                .append("        return SUBSCRIBER_METHODS.get(subscriberClass);\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Class<?>[] getSubscriberClassesRegisteredOnStart() {\n")
+                .append("        return SUBSCRIBER_CLASSES_REGISTERED_ON_START.clone();\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private static List<AnnotationMirror> toAnnotations(ExecutableElement method) {
+        List<AnnotationMirror> toAnnotations = new ArrayList<>();
+        AnnotationMirror subscribe = findAnnotation(method, SUBSCRIBE);
+        Object value = annotationValueObject(subscribe, "value");
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                toAnnotations.add((AnnotationMirror) ((AnnotationValue) item).getValue());
+            }
+        } else if (value instanceof AnnotationMirror) {
+            toAnnotations.add((AnnotationMirror) value);
+        }
+        return toAnnotations;
+    }
+
+    private static String annotationValue(AnnotationMirror annotation, String name, String defaultValue) {
+        Object value = annotationValueObject(annotation, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof VariableElement) {
+            return ((VariableElement) value).getSimpleName().toString();
+        }
+        return value.toString();
+    }
+
+    private static Object annotationValueObject(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+
+        TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+        String name = superType.getQualifiedName().toString();
+        return name.startsWith("java.") || name.startsWith("android.") || name.startsWith("androidx.") ? null : superType;
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                default:
+                    literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private Messager messager() {
+        return processingEnv.getMessager();
+    }
+}